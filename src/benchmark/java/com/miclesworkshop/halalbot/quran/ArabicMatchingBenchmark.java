@@ -0,0 +1,113 @@
+package com.miclesworkshop.halalbot.quran;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares Arabic matching over the whole corpus three ways: {@link String#contains} on the raw text with its
+ * tashkeel, normalizing every ayah for each query, and {@link QuranIndex#findArabic} over the text normalized
+ * once when the index is built. Run it with {@code gradle quranBenchmark}.
+ * <p>
+ * The queries are written the way people type them, without harakat and with bare alefs.
+ */
+public final class ArabicMatchingBenchmark {
+    private static final String[] QUERIES = {
+            "\u0628\u0633\u0645 \u0627\u0644\u0644\u0647 \u0627\u0644\u0631\u062d\u0645\u0646 \u0627\u0644\u0631\u062d\u064a\u0645",
+            "\u0627\u0644\u062d\u0645\u062f \u0644\u0644\u0647 \u0631\u0628 \u0627\u0644\u0639\u0627\u0644\u0645\u064a\u0646",
+            "\u064a\u0627 \u0627\u064a\u0647\u0627 \u0627\u0644\u0630\u064a\u0646 \u0627\u0645\u0646\u0648\u0627",
+            "\u0627\u0646 \u0627\u0644\u0644\u0647 \u063a\u0641\u0648\u0631 \u0631\u062d\u064a\u0645",
+            "\u0648\u0627\u0644\u0644\u0647 \u0639\u0644\u0649 \u0643\u0644 \u0634\u064a\u0621 \u0642\u062f\u064a\u0631",
+            "\u0627\u0644\u0635\u0644\u0627\u0629",
+            "\u0627\u0644\u062c\u0646\u0629",
+            "\u0642\u0644 \u0647\u0648 \u0627\u0644\u0644\u0647 \u0627\u062d\u062f"
+    };
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 20;
+
+    private ArabicMatchingBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: ArabicMatchingBenchmark <corpus>");
+            System.exit(1);
+            return;
+        }
+
+        QuranCorpus corpus = QuranCorpus.map(new File(args[0]));
+        QuranIndex index = QuranIndex.build(corpus);
+
+        String[] raw = new String[corpus.getTotalAyahCount()];
+        int doc = 0;
+        for (int surah = 1; surah <= corpus.getSurahCount(); surah++) {
+            for (int ayah = 1; ayah <= corpus.getAyahCount(surah); ayah++) {
+                raw[doc++] = corpus.getText(surah, ayah, QuranCorpus.Text.ARABIC);
+            }
+        }
+
+        System.out.println(raw.length + " ayahs, " + QUERIES.length + " queries, " + ROUNDS + " rounds");
+
+        run("raw String.contains", () -> {
+            int hits = 0;
+            for (String query : QUERIES) {
+                for (String text : raw) {
+                    if (text.contains(query)) {
+                        hits++;
+                    }
+                }
+            }
+            return hits;
+        });
+
+        run("normalized per query", () -> {
+            int hits = 0;
+            for (String query : QUERIES) {
+                // the same folding the index applies when it is built
+                String needle = String.join(" ", QuranIndex.tokenize(query));
+                for (String text : raw) {
+                    if (String.join(" ", QuranIndex.tokenize(text)).contains(needle)) {
+                        hits++;
+                    }
+                }
+            }
+            return hits;
+        });
+
+        run("precomputed findArabic", () -> {
+            int hits = 0;
+            for (String query : QUERIES) {
+                List<QuranIndex.Hit> found = index.findArabic(query, Integer.MAX_VALUE);
+                hits += found.size();
+            }
+            return hits;
+        });
+    }
+
+    private static void run(String name, Round round) {
+        int hits = 0;
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            hits += round.run();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            hits += round.run();
+        }
+        long nanos = System.nanoTime() - start;
+
+        double millisPerQuery = nanos / (double) TimeUnit.MILLISECONDS.toNanos(1) / ROUNDS / QUERIES.length;
+        int hitsPerRound = hits / (WARMUP_ROUNDS + ROUNDS);
+
+        System.out.println(String.format("%-24s %8.3f ms/query %8.0f queries/s %6d ayahs matched", name,
+                millisPerQuery, 1000 / millisPerQuery, hitsPerRound));
+    }
+
+    private interface Round {
+        // returns the number of matches, which also keeps the work from being optimized away
+        int run();
+    }
+}
@@ -0,0 +1,232 @@
+package com.miclesworkshop.halalbot;
+
+import com.google.common.base.Preconditions;
+import org.javacord.api.entity.channel.TextChannel;
+import org.javacord.api.entity.server.Server;
+import org.javacord.api.entity.user.User;
+
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Central queue for outbound REST calls. At most {@code maxInFlight} calls run at once, and at most
+ * {@code perRouteLimit} of them against the same route, so one busy channel can't hold up the rest of the bot.
+ * When calls have to wait, higher priorities go first and calls of the same priority keep their submission order.
+ * <p>
+ * Actions are plain suppliers of futures, so the scheduler does not need a live {@code DiscordApi}.
+ */
+public class ActionScheduler {
+    public enum Priority {
+        /** Bans, jails and anything else that stops abuse. */
+        MODERATION,
+        /** Approving, closing and creating approval tickets. */
+        APPROVAL,
+        /** Pings, direct messages and other informational messages. */
+        NOTICE
+    }
+
+    private static final Comparator<Action<?>> ORDER = Comparator.<Action<?>, Priority>comparing(action -> action.priority)
+            .thenComparingLong(action -> action.sequence);
+
+    private final int maxInFlight;
+    private final int perRouteLimit;
+    private final LongSupplier nanoClock;
+
+    // guarded by this
+    private final TreeSet<Action<?>> queue = new TreeSet<>(ORDER);
+    private final Map<String, Integer> inFlightByRoute = new HashMap<>();
+    private long nextSequence;
+    private int inFlight;
+
+    private final AtomicInteger pumpRequests = new AtomicInteger();
+
+    private final Map<Priority, Metrics> metrics = new EnumMap<>(Priority.class);
+
+    public ActionScheduler(int maxInFlight, int perRouteLimit, LongSupplier nanoClock) {
+        Preconditions.checkArgument(maxInFlight > 0 && perRouteLimit > 0, "limits must be positive");
+
+        this.maxInFlight = maxInFlight;
+        this.perRouteLimit = perRouteLimit;
+        this.nanoClock = nanoClock;
+
+        for (Priority priority : Priority.values()) {
+            metrics.put(priority, new Metrics());
+        }
+    }
+
+    /**
+     * Queues an action and returns a future that completes with the action's result once it has run.
+     *
+     * @param route the rate limit route the action hits, see the static route helpers
+     */
+    public <T> CompletableFuture<T> submit(Priority priority, String route, Supplier<CompletableFuture<T>> action) {
+        Action<T> queued;
+
+        synchronized (this) {
+            queued = new Action<>(priority, route, action, nextSequence++, nanoClock.getAsLong());
+            queue.add(queued);
+        }
+
+        metrics.get(priority).submitted.incrementAndGet();
+        pump();
+
+        return queued.result;
+    }
+
+    public static String messages(TextChannel channel) {
+        return "channels/" + channel.getId() + "/messages";
+    }
+
+    public static String directMessages(User user) {
+        return "users/" + user.getId() + "/messages";
+    }
+
+    public static String roles(Server server) {
+        return "guilds/" + server.getId() + "/members/roles";
+    }
+
+    public static String bans(Server server) {
+        return "guilds/" + server.getId() + "/bans";
+    }
+
+    public synchronized int getQueuedCount() {
+        return queue.size();
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlight;
+    }
+
+    public long getSubmittedCount(Priority priority) {
+        return metrics.get(priority).submitted.get();
+    }
+
+    public long getStartedCount(Priority priority) {
+        return metrics.get(priority).started.get();
+    }
+
+    /**
+     * @return the mean time actions of this priority spent waiting in the queue, in milliseconds
+     */
+    public double getAverageQueueMillis(Priority priority) {
+        Metrics m = metrics.get(priority);
+        long started = m.started.get();
+        return started == 0 ? 0 : m.queueNanos.get() / (double) started / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public long getMaxQueueMillis(Priority priority) {
+        return TimeUnit.NANOSECONDS.toMillis(metrics.get(priority).maxQueueNanos.get());
+    }
+
+    private void pump() {
+        // actions that complete synchronously call back into pump, so only one thread drains at a time and
+        // later requests just make it go round again instead of recursing
+        if (pumpRequests.getAndIncrement() != 0) {
+            return;
+        }
+
+        int requests = 1;
+        do {
+            drain();
+            requests = pumpRequests.addAndGet(-requests);
+        } while (requests != 0);
+    }
+
+    // starts as many queued actions as the limits allow, highest priority first
+    private void drain() {
+        while (true) {
+            Action<?> next = null;
+
+            synchronized (this) {
+                if (inFlight >= maxInFlight) {
+                    return;
+                }
+
+                for (Iterator<Action<?>> it = queue.iterator(); it.hasNext(); ) {
+                    Action<?> candidate = it.next();
+
+                    if (inFlightByRoute.getOrDefault(candidate.route, 0) < perRouteLimit) {
+                        it.remove();
+                        next = candidate;
+                        break;
+                    }
+                }
+
+                if (next == null) {
+                    return;
+                }
+
+                inFlight++;
+                inFlightByRoute.merge(next.route, 1, Integer::sum);
+            }
+
+            Metrics m = metrics.get(next.priority);
+            long waited = nanoClock.getAsLong() - next.queuedAt;
+            m.started.incrementAndGet();
+            m.queueNanos.addAndGet(waited);
+            m.maxQueueNanos.accumulateAndGet(waited, Math::max);
+
+            start(next);
+        }
+    }
+
+    private <T> void start(Action<T> action) {
+        CompletableFuture<T> call;
+        try {
+            call = action.action.get();
+        } catch (RuntimeException e) {
+            call = new CompletableFuture<>();
+            call.completeExceptionally(e);
+        }
+
+        call.whenComplete((result, throwable) -> {
+            synchronized (this) {
+                inFlight--;
+                inFlightByRoute.computeIfPresent(action.route, (route, count) -> count == 1 ? null : count - 1);
+            }
+
+            pump();
+
+            if (throwable != null) {
+                action.result.completeExceptionally(throwable);
+            } else {
+                action.result.complete(result);
+            }
+        });
+    }
+
+    private static final class Action<T> {
+        private final Priority priority;
+        private final String route;
+        private final Supplier<CompletableFuture<T>> action;
+        private final long sequence;
+        private final long queuedAt;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private Action(Priority priority, String route, Supplier<CompletableFuture<T>> action, long sequence,
+                       long queuedAt) {
+            this.priority = priority;
+            this.route = route;
+            this.action = action;
+            this.sequence = sequence;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    private static final class Metrics {
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong started = new AtomicLong();
+        private final AtomicLong queueNanos = new AtomicLong();
+        private final AtomicLong maxQueueNanos = new AtomicLong();
+    }
+}
@@ -0,0 +1,130 @@
+package com.miclesworkshop.halalbot;
+
+import org.javacord.api.entity.channel.ChannelCategory;
+import org.javacord.api.entity.channel.ServerChannel;
+import org.javacord.api.entity.channel.ServerTextChannel;
+import org.javacord.api.entity.server.Server;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps applicants to their approval channel, per server, so finding a ticket doesn't mean looking through every
+ * channel of the server. It is built from the server's channels when the server becomes available and kept
+ * current from channel events. Lookups check the channel they find, so an entry that went stale without an event,
+ * for example because the channel was moved out of the approval category, is dropped instead of returned.
+ */
+public class ApprovalChannelIndex {
+    private static final String PREFIX = "approval-";
+
+    // server id -> applicant id -> channel id
+    private final ConcurrentMap<Long, ConcurrentMap<Long, Long>> channels = new ConcurrentHashMap<>();
+
+    public void rebuild(Server server) {
+        ConcurrentMap<Long, Long> index = new ConcurrentHashMap<>();
+
+        for (ServerTextChannel channel : server.getTextChannels()) {
+            long applicantId = getApplicantId(channel);
+
+            if (applicantId != 0) {
+                index.put(applicantId, channel.getId());
+            }
+        }
+
+        channels.put(server.getId(), index);
+    }
+
+    public void add(ServerChannel channel) {
+        channel.asServerTextChannel().ifPresent(textChannel -> {
+            long applicantId = getApplicantId(textChannel);
+
+            if (applicantId != 0) {
+                getIndex(channel.getServer()).put(applicantId, channel.getId());
+            }
+        });
+    }
+
+    /**
+     * @return whether the channel was an indexed approval channel
+     */
+    public boolean remove(ServerChannel channel) {
+        return remove(channel, channel.getName());
+    }
+
+    public void rename(ServerChannel channel, String oldName) {
+        remove(channel, oldName);
+        add(channel);
+    }
+
+    public Optional<ServerTextChannel> find(Server server, long applicantId) {
+        ConcurrentMap<Long, Long> index = getIndex(server);
+        Long channelId = index.get(applicantId);
+
+        if (channelId == null) {
+            return Optional.empty();
+        }
+
+        Optional<ServerTextChannel> channel = server.getTextChannelById(channelId)
+                .filter(found -> getApplicantId(found) == applicantId);
+
+        if (!channel.isPresent()) {
+            index.remove(applicantId, channelId);
+        }
+
+        return channel;
+    }
+
+    /**
+     * @return a live view of the ids of the server's approval channels
+     */
+    public Collection<Long> getChannelIds(Server server) {
+        return getIndex(server).values();
+    }
+
+    public int size() {
+        return channels.values().stream().mapToInt(ConcurrentMap::size).sum();
+    }
+
+    /**
+     * @return whether the channel is an applicant's channel in an approval category
+     */
+    public static boolean isApprovalChannel(ServerTextChannel channel) {
+        return getApplicantId(channel) != 0;
+    }
+
+    /**
+     * @return the id of the channel's applicant, or 0 if it isn't an approval channel
+     */
+    public static long getApplicantId(ServerTextChannel channel) {
+        Optional<ChannelCategory> category = channel.getCategory();
+
+        if (!category.isPresent() || !category.get().getName().startsWith("Approval")) {
+            return 0;
+        }
+
+        return parseApplicantId(channel.getName());
+    }
+
+    private static long parseApplicantId(String channelName) {
+        if (!channelName.startsWith(PREFIX)) {
+            return 0;
+        }
+
+        try {
+            return Long.parseLong(channelName.substring(PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private boolean remove(ServerChannel channel, String name) {
+        long applicantId = parseApplicantId(name);
+        return applicantId != 0 && getIndex(channel.getServer()).remove(applicantId, channel.getId());
+    }
+
+    private ConcurrentMap<Long, Long> getIndex(Server server) {
+        return channels.computeIfAbsent(server.getId(), id -> new ConcurrentHashMap<>());
+    }
+}
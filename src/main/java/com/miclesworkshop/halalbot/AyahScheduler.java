@@ -0,0 +1,153 @@
+package com.miclesworkshop.halalbot;
+
+import com.miclesworkshop.halalbot.quran.QuranCorpus;
+import com.miclesworkshop.halalbot.quran.QuranLibrary;
+import com.miclesworkshop.halalbot.quran.QuranRenderer;
+import com.miclesworkshop.halalbot.quran.Translation;
+import org.javacord.api.entity.channel.ServerTextChannel;
+import org.javacord.api.entity.message.embed.EmbedBuilder;
+import org.javacord.api.entity.server.Server;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Posts the ayah of the day to every server that has asked for it. Servers sit in a timing wheel with one slot
+ * per minute of the day, so each tick only looks at the servers due in that minute however many there are.
+ * Within the minute each server posts at its own fixed second, which keeps servers that picked the same time
+ * from all hitting Discord at once.
+ */
+public class AyahScheduler {
+    static final int MINUTES_PER_DAY = 1440;
+
+    private final Logger log = Logger.getLogger(getClass().getName());
+
+    private final HalalBot bot;
+    private final ScheduledExecutorService scheduler;
+    private final Clock clock;
+
+    private final List<Set<Long>> wheel;
+    private final Map<Long, Integer> slots = new ConcurrentHashMap<>();
+
+    // last minute since the epoch that was processed, only touched by the scheduler thread
+    private long lastMinute;
+
+    public AyahScheduler(HalalBot bot, ScheduledExecutorService scheduler, Clock clock) {
+        this.bot = bot;
+        this.scheduler = scheduler;
+        this.clock = clock;
+
+        wheel = new ArrayList<>(MINUTES_PER_DAY);
+        for (int i = 0; i < MINUTES_PER_DAY; i++) {
+            wheel.add(ConcurrentHashMap.newKeySet());
+        }
+
+        long millis = clock.millis();
+        lastMinute = millis / 60_000;
+        scheduler.scheduleAtFixedRate(this::tick, 60_000 - millis % 60_000, 60_000, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Puts the server in the slot its server data asks for, or takes it out of the wheel if posting is off.
+     */
+    public synchronized void update(Server server) {
+        ServerData serverData = bot.getServerData(server);
+        Integer previous = slots.remove(server.getId());
+
+        if (previous != null) {
+            wheel.get(previous).remove(server.getId());
+        }
+
+        if (serverData.getDailyAyahChannel() != 0) {
+            int slot = Math.floorMod(serverData.getDailyAyahMinute(), MINUTES_PER_DAY);
+            slots.put(server.getId(), slot);
+            wheel.get(slot).add(server.getId());
+        }
+    }
+
+    public int getScheduledCount() {
+        return slots.size();
+    }
+
+    private void tick() {
+        long minute = clock.millis() / 60_000;
+
+        // catch up on minutes a late tick skipped, but never go round the wheel more than once
+        long from = Math.max(lastMinute + 1, minute - MINUTES_PER_DAY + 1);
+        for (long m = from; m <= minute; m++) {
+            for (long serverId : wheel.get((int) (m % MINUTES_PER_DAY))) {
+                scheduler.schedule(() -> post(serverId), spread(serverId), TimeUnit.SECONDS);
+            }
+        }
+
+        lastMinute = Math.max(lastMinute, minute);
+    }
+
+    private void post(long serverId) {
+        Optional<Server> server = bot.getDiscordApi().getServerById(serverId);
+        QuranLibrary quran = bot.getQuranLibrary();
+
+        if (!server.isPresent() || !quran.isAvailable()) {
+            return;
+        }
+
+        ServerData serverData = bot.getServerData(server.get());
+        Optional<ServerTextChannel> channel = server.get().getTextChannelById(serverData.getDailyAyahChannel());
+
+        if (!channel.isPresent()) {
+            log.info("Daily ayah channel of " + server.get().getName() + " is gone, skipping");
+            return;
+        }
+
+        QuranCorpus corpus = quran.getCorpus();
+        int[] ayah = locate(corpus, ayahOfDay(clock.millis() / TimeUnit.DAYS.toMillis(1), corpus.getTotalAyahCount()));
+        Translation translation = quran.getRegistry().find(serverData.getQuranTranslation())
+                .orElse(quran.getRegistry().getDefault());
+
+        QuranRenderer.Page page = quran.getRenderer().renderPage(QuranRenderer.Mode.BOTH, translation, ayah[0],
+                ayah[1], ayah[1]);
+
+        EmbedBuilder embed = new EmbedBuilder().setTitle("Ayah of the day");
+        page.getFields().forEach(field -> embed.addField(field.getName(), field.getValue()));
+
+        bot.getActionScheduler().submit(ActionScheduler.Priority.NOTICE, ActionScheduler.messages(channel.get()),
+                () -> channel.get().sendMessage(embed)).exceptionally(BotExecutor::logFailure);
+    }
+
+    // the second within its minute a server posts at, fixed per server
+    static int spread(long serverId) {
+        return (int) Math.floorMod(mix(serverId), 60L);
+    }
+
+    // the same ayah everywhere on a given day, but a different one each day
+    static int ayahOfDay(long epochDay, int totalAyahs) {
+        return (int) Math.floorMod(mix(epochDay), (long) totalAyahs);
+    }
+
+    // splitmix64 finalizer, so consecutive ids and days end up far apart
+    private static long mix(long value) {
+        value += 0x9E3779B97F4A7C15L;
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    // turns an index over the whole Quran into a surah and ayah number
+    private static int[] locate(QuranCorpus corpus, int index) {
+        int surah = 1;
+        while (index >= corpus.getAyahCount(surah)) {
+            index -= corpus.getAyahCount(surah);
+            surah++;
+        }
+
+        return new int[]{surah, index + 1};
+    }
+}
@@ -0,0 +1,99 @@
+package com.miclesworkshop.halalbot;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded executor that runs everything the bot would otherwise do on Javacord's listener threads.
+ * Uses virtual threads when the running JVM supports them, and platform threads otherwise.
+ */
+public class BotExecutor implements Executor {
+    private static final Logger log = Logger.getLogger(BotExecutor.class.getName());
+
+    private final ThreadPoolExecutor executor;
+    private final boolean virtualThreads;
+
+    public BotExecutor(int threads, int queueCapacity, boolean preferVirtualThreads) {
+        ThreadFactory threadFactory = preferVirtualThreads ? createVirtualThreadFactory() : null;
+        virtualThreads = threadFactory != null;
+
+        if (threadFactory == null) {
+            threadFactory = new ThreadFactoryBuilder()
+                    .setNameFormat("halalbot-worker-%d")
+                    .setDaemon(true)
+                    .build();
+        }
+
+        // when the queue is full the submitting thread runs the task itself, which throttles the
+        // listeners instead of dropping moderation work on the floor
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+
+        log.info("Async executor: " + threads + " threads, queue capacity " + queueCapacity
+                + (virtualThreads ? ", virtual threads" : ", platform threads"));
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        executor.execute(command);
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getMaximumPoolSize() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public long getCompletedTaskCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    public boolean isUsingVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warning("Async executor did not drain within 10 seconds, " + getQueueDepth() + " tasks left");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Logs the failure of an asynchronous operation, for use with {@code CompletableFuture#exceptionally}.
+     */
+    public static <T> T logFailure(Throwable throwable) {
+        log.log(Level.WARNING, "Asynchronous operation failed", throwable);
+        return null;
+    }
+
+    // Thread.ofVirtual() only exists on Java 21+, and the build targets Java 8, so look it up reflectively
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "halalbot-virtual-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -3,4 +3,54 @@ package com.miclesworkshop.halalbot;
 public class Config {
     public String dataFolder;
     public String token;
+
+    // async execution of Discord REST work, see BotExecutor
+    public int asyncThreads = 8;
+    public int asyncQueueCapacity = 1024;
+    public boolean virtualThreads = true;
+
+    // outbound REST calls, see ActionScheduler
+    public int restMaxInFlight = 8;
+    public int restPerRouteLimit = 2;
+
+    // servers initialized at the same time on startup
+    public int initParallelism = 4;
+
+    // how long server data changes may sit in memory before they are written to disk
+    public int saveDelaySeconds = 5;
+
+    // slowmode limiters are dropped for channels idle this long, and capped at this many channels
+    public int slowmodeIdleMinutes = 10;
+    public int slowmodeMaxChannels = 10000;
+
+    // raid detection: lockdown once raidJoinThreshold members join within raidWindowSeconds, or once
+    // raidYoungAccountThreshold of them (and at least half) have accounts younger than raidYoungAccountDays
+    public int raidWindowSeconds = 60;
+    public int raidJoinThreshold = 10;
+    public int raidYoungAccountDays = 7;
+    public int raidYoungAccountThreshold = 5;
+    public int raidQuietMinutes = 10;
+    public int raidDigestSeconds = 15;
+
+    // number of rendered Quran ranges kept for repeat requests
+    public int quranRenderCacheSize = 512;
+
+    // paged Quran messages stop responding to reactions after this long without a page turn
+    public int quranSessionMinutes = 10;
+    public int quranMaxSessions = 1000;
+
+    // approval tickets spill over into "Approval 2", "Approval 3"... up to this many categories, then applicants queue
+    public int approvalMaxCategories = 5;
+
+    // at most this many stale tickets are closed per minute, see TicketReaper
+    public int reaperBatchSize = 5;
+
+    // approval channel transcripts are recorded as messages arrive, streams to channels idle this long are closed
+    public int transcriptIdleMinutes = 10;
+    public int transcriptMaxOpenFiles = 256;
+    // transcripts longer than this many messages are posted as a gzipped attachment instead
+    public int transcriptMaxMessages = 5;
+
+    // notices to the same channel that are queued within this window are merged into as few messages as possible
+    public int coalesceWindowMillis = 1500;
 }
@@ -1,17 +1,20 @@
 package com.miclesworkshop.halalbot;
 
 import com.google.common.base.Preconditions;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.miclesworkshop.halalbot.commands.*;
+import com.miclesworkshop.halalbot.quran.QuranLibrary;
+import com.miclesworkshop.halalbot.storage.JournalServerDataRepository;
+import com.miclesworkshop.halalbot.storage.ServerDataChange;
+import com.miclesworkshop.halalbot.storage.ServerDataRepository;
+import com.miclesworkshop.halalbot.storage.TicketArchive;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.javacord.api.DiscordApi;
 import org.javacord.api.DiscordApiBuilder;
-import org.javacord.api.entity.DiscordEntity;
 import org.javacord.api.entity.channel.ChannelCategory;
-import org.javacord.api.entity.channel.RegularServerChannel;
 import org.javacord.api.entity.channel.ServerChannel;
 import org.javacord.api.entity.channel.ServerTextChannel;
+import org.javacord.api.entity.channel.ServerTextChannelBuilder;
 import org.javacord.api.entity.message.Message;
 import org.javacord.api.entity.message.embed.EmbedBuilder;
 import org.javacord.api.entity.permission.PermissionType;
@@ -22,111 +25,245 @@ import org.javacord.api.entity.server.Server;
 import org.javacord.api.entity.user.User;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.io.UncheckedIOException;
+import java.time.Clock;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 public class HalalBot {
+    // Discord doesn't allow more channels in one category
+    private static final int CATEGORY_CHANNEL_LIMIT = 50;
+
     private DiscordApi discordApi;
     private Logger log = Logger.getLogger(getClass().getName());
-    private List<AbstractCommands> commandGroups;
-
-    private Gson gson;
-    private Map<Long, ServerData> serverDataMap;
-    private Map<Long, TimedCounter> counters;
-
-    private File serverDataFile;
-
-    public HalalBot(File dataFolder, String token) {
-        discordApi = new DiscordApiBuilder().setToken(token)
+    private File dataFolder;
+    private Config config;
+    private BotExecutor executor;
+    private ActionScheduler actionScheduler;
+    private CommandDispatcher commandDispatcher;
+
+    private ScheduledExecutorService scheduler;
+    private ServerDataRepository serverDataRepository;
+    private SlowmodeRegistry slowmodeRegistry;
+    private RaidProtection raidProtection;
+    private MessageCoalescer messageCoalescer;
+    private TranscriptRecorder transcriptRecorder;
+    private ApprovalChannelIndex approvalChannelIndex = new ApprovalChannelIndex();
+    private RoleCache roleCache = new RoleCache(server -> getServerData(server).getJailedRoleId());
+    private TicketQueue ticketQueue = new TicketQueue(System::nanoTime);
+    private TicketReaper ticketReaper;
+
+    // the last ticket opening per server, see inTicketOrder
+    private Map<Long, CompletableFuture<Void>> ticketOpenings = new ConcurrentHashMap<>();
+    private TicketArchive ticketArchive;
+    private QuranLibrary quranLibrary;
+    private QuranPager quranPager;
+    private AyahScheduler ayahScheduler;
+
+    // role/channel creations that are in flight, so concurrent callers share one REST call
+    private Map<String, CompletableFuture<?>> pendingCreations = new ConcurrentHashMap<>();
+
+    public HalalBot(File dataFolder, Config config) throws IOException {
+        this.dataFolder = dataFolder;
+        this.config = config;
+        executor = new BotExecutor(config.asyncThreads, config.asyncQueueCapacity, config.virtualThreads);
+        actionScheduler = new ActionScheduler(config.restMaxInFlight, config.restPerRouteLimit, System::nanoTime);
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("halalbot-scheduler")
+                .setDaemon(true)
+                .build());
+
+        discordApi = new DiscordApiBuilder().setToken(config.token)
                 .setAllIntents()
                 .login()
                 .join();
 
-        serverDataFile = new File(dataFolder, "server_data.json");
-
-        counters = new HashMap<>();
-        gson = new Gson();
-        if (!serverDataFile.exists()) {
-            log.info("Creating new server data file...");
-            serverDataMap = new HashMap<>();
-            saveData();
-        } else {
-            log.info("Reading server data...");
-            try (FileReader reader = new FileReader(serverDataFile)) {
-                Type type = new TypeToken<Map<Long, ServerData>>() {
-                }.getType();
-                serverDataMap = gson.fromJson(reader, type);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-            log.info("  -> Read " + serverDataMap.size() + " servers.");
-        }
+        serverDataRepository = new JournalServerDataRepository(new File(dataFolder, "server_data.json"),
+                new File(dataFolder, "server_data.journal"), scheduler, config.saveDelaySeconds, TimeUnit.SECONDS);
 
-        commandGroups = Arrays.asList(
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "halalbot-shutdown"));
+
+        slowmodeRegistry = new SlowmodeRegistry(discordApi, scheduler, config.slowmodeIdleMinutes, TimeUnit.MINUTES,
+                config.slowmodeMaxChannels);
+
+        messageCoalescer = new MessageCoalescer(scheduler, config.coalesceWindowMillis, TimeUnit.MILLISECONDS);
+        raidProtection = new RaidProtection(this, config, scheduler, Clock.systemUTC());
+        transcriptRecorder = new TranscriptRecorder(new File(dataFolder, "transcripts"), scheduler,
+                config.transcriptIdleMinutes, TimeUnit.MINUTES, config.transcriptMaxOpenFiles);
+        ticketArchive = new TicketArchive(new File(dataFolder, "archive"));
+        ticketReaper = new TicketReaper(this, scheduler, Clock.systemUTC(), config.reaperBatchSize);
+
+        quranLibrary = new QuranLibrary(dataFolder, config.quranRenderCacheSize);
+        quranPager = quranLibrary.isAvailable() ? new QuranPager(quranLibrary.getRenderer(), scheduler,
+                config.quranSessionMinutes, TimeUnit.MINUTES, config.quranMaxSessions) : null;
+        ayahScheduler = new AyahScheduler(this, scheduler, Clock.systemUTC());
+
+        commandDispatcher = new CommandDispatcher(Arrays.asList(
                 new HelpCommand(this),
                 new ApprovalCommands(this),
                 new JailCommands(this),
-                new QuranCommands((this)));
+                new QuranCommands(this),
+                new SettingsCommands(this),
+                new HistoryCommand(this),
+                new StatsCommand(this)), executor);
 
         registerListeners();
 
-        discordApi.getServers().forEach(this::initServer);
+        initServers(discordApi.getServers());
 
         printInvite();
     }
 
-    private static <T> T getOrRuntimeException(CompletableFuture<T> future) {
+    private static <T> CompletableFuture<T> firstOrCreate(List<T> existing, Supplier<CompletableFuture<T>> creator) {
+        return existing.isEmpty() ? creator.get() : CompletableFuture.completedFuture(existing.get(0));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> createOnce(Server server, String what, Supplier<CompletableFuture<T>> creator) {
+        String key = server.getId() + ":" + what;
+        CompletableFuture<T> created = new CompletableFuture<>();
+        CompletableFuture<?> pending = pendingCreations.putIfAbsent(key, created);
+
+        if (pending != null) {
+            return (CompletableFuture<T>) pending;
+        }
+
+        CompletableFuture<T> creation;
         try {
-            return future.get();
-        } catch (Exception exception) {
-            throw new RuntimeException(exception);
+            creation = creator.get();
+        } catch (RuntimeException e) {
+            creation = new CompletableFuture<>();
+            creation.completeExceptionally(e);
+        }
+
+        creation.whenComplete((result, throwable) -> {
+            pendingCreations.remove(key, created);
+
+            if (throwable != null) {
+                created.completeExceptionally(throwable);
+            } else {
+                created.complete(result);
+            }
+        });
+
+        return created;
+    }
+
+    public void updateServerData(Server server, ServerDataChange change) {
+        serverDataRepository.apply(server.getId(), change);
+    }
+
+    private void shutdown() {
+        log.info("Shutting down, flushing server data...");
+        executor.shutdown();
+        // closed while the scheduler still runs, since a failed final append schedules a retry on it
+        serverDataRepository.close();
+        scheduler.shutdown();
+    }
+
+    /**
+     * Initializes the servers a few at a time rather than one by one, then persists everything they registered in
+     * one go.
+     */
+    private CompletableFuture<Void> initServers(Collection<Server> servers) {
+        long start = System.nanoTime();
+        Queue<Server> pending = new ConcurrentLinkedQueue<>(servers);
+
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[Math.max(1, Math.min(config.initParallelism,
+                servers.size()))];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = initNext(pending);
         }
+
+        return CompletableFuture.allOf(workers).whenComplete((done, throwable) -> {
+            serverDataRepository.flush();
+            log.info("Initialized " + servers.size() + " servers in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        });
     }
 
-    public synchronized void saveData() {
-        try (FileWriter writer = new FileWriter(serverDataFile)) {
-            gson.toJson(serverDataMap, writer);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    private CompletableFuture<Void> initNext(Queue<Server> pending) {
+        Server server = pending.poll();
+
+        if (server == null) {
+            return CompletableFuture.completedFuture(null);
         }
+
+        // async, so servers that finish right away don't pile up on the stack
+        return initServer(server).thenComposeAsync(done -> initNext(pending), executor);
+    }
+
+    /**
+     * @return whether everything {@link #initServer(Server)} sets up is known and still exists
+     */
+    private boolean isInitialized(Server server) {
+        if (!serverDataRepository.contains(server.getId())) {
+            return false;
+        }
+
+        ServerData serverData = getServerData(server);
+
+        return server.getTextChannelById(serverData.getLimboChannel()).isPresent()
+                && server.getTextChannelById(serverData.getJailChannel()).isPresent()
+                && server.getTextChannelById(serverData.getLogsChannel()).isPresent()
+                && roleCache.getJailedRole(server).isPresent()
+                && roleCache.getModeratorRole(server).isPresent();
     }
 
-    private void initServer(Server server) {
+    private CompletableFuture<Void> initServer(Server server) {
+        long start = System.nanoTime();
+
         log.info("Initializing " + server.getName());
 
         log.info("  -> Own Roles: " + server.getRoles(discordApi.getYourself()).stream().map(Role::getName).collect(Collectors.joining(", ")));
 
-        getOrCreateLimboChannel(server);
-        getOrCreateJailChannel(server);
-        getOrCreateLogsChannel(server);
-
-        if (!serverDataMap.containsKey(server.getId())) {
+        if (!serverDataRepository.contains(server.getId())) {
             log.info("  -> Data not registered, registering...");
             getServerData(server);
-            saveData();
         }
 
-        getApprovalModeratorRole(server);
-        getJailedRole(server);
+        ayahScheduler.update(server);
+        approvalChannelIndex.rebuild(server);
+
+        return CompletableFuture.allOf(
+                getOrCreateLimboChannel(server),
+                getOrCreateJailChannel(server),
+                getOrCreateLogsChannel(server),
+                getApprovalModeratorRole(server),
+                getJailedRole(server)
+        ).handle((done, throwable) -> {
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            if (throwable != null) {
+                BotExecutor.logFailure(throwable);
+                log.warning("  -> " + server.getName() + " failed to initialize after " + millis + " ms");
+            } else {
+                log.info("  -> " + server.getName() + " ready in " + millis + " ms");
+            }
+            return null;
+        });
     }
 
-    public Role getApprovalModeratorRole(Server server) {
-        List<Role> roles = server.getRolesByNameIgnoreCase("Approval Moderator");
+    public CompletableFuture<Role> getApprovalModeratorRole(Server server) {
+        Optional<Role> role = roleCache.getModeratorRole(server);
 
-        if (!roles.isEmpty()) {
-            return roles.get(0);
+        if (role.isPresent()) {
+            return CompletableFuture.completedFuture(role.get());
         }
 
-        return getOrRuntimeException(server
+        return createOnce(server, "approval-moderator-role", () -> server
                 .createRoleBuilder()
                 .setName("Approval Moderator")
                 .setAuditLogReason("Approval role was missing, created")
@@ -135,16 +272,30 @@ public class HalalBot {
                 .create());
     }
 
-    public Role getJailedRole(Server server) {
-        return server.getRoleById(getServerData(server).getJailedRoleId()).orElseGet(() ->
-                server.getRolesByName("Private Channel").stream().findFirst().orElseGet(() -> getOrRuntimeException(server
-                        .createRoleBuilder()
-                        .setName("Private Channel")
-                        .setAuditLogReason("Private Channel role was missing, created")
-                        .setDisplaySeparately(false)
-                        .setMentionable(true)
-                        .setPermissions(new PermissionsBuilder().setDenied(PermissionType.VIEW_CHANNEL).build())
-                        .create())));
+    public CompletableFuture<Role> getJailedRole(Server server) {
+        Optional<Role> role = roleCache.getJailedRole(server);
+
+        if (role.isPresent()) {
+            return CompletableFuture.completedFuture(rememberJailedRole(server, role.get()));
+        }
+
+        return createOnce(server, "jailed-role", () -> server
+                .createRoleBuilder()
+                .setName("Private Channel")
+                .setAuditLogReason("Private Channel role was missing, created")
+                .setDisplaySeparately(false)
+                .setMentionable(true)
+                .setPermissions(new PermissionsBuilder().setDenied(PermissionType.VIEW_CHANNEL).build())
+                .create()).thenApply(created -> rememberJailedRole(server, created));
+    }
+
+    // stores the role's id so it is still found after being renamed, and so isInitialized can check it
+    private Role rememberJailedRole(Server server, Role role) {
+        if (getServerData(server).getJailedRoleId() != role.getId()) {
+            updateServerData(server, ServerDataChange.jailedRole(role.getId()));
+        }
+
+        return role;
     }
 
     private void printInvite() {
@@ -158,7 +309,23 @@ public class HalalBot {
             log.info("Joined " + server.getName());
             initServer(server);
         });
-        discordApi.addServerBecomesAvailableListener(event -> initServer(event.getServer()));
+        discordApi.addServerBecomesAvailableListener(event -> {
+            Server server = event.getServer();
+
+            // channels and roles may have come and gone while the server was unavailable
+            approvalChannelIndex.rebuild(server);
+            roleCache.invalidate(server);
+
+            // on a reconnect the server is usually set up already, so skip the REST calls and their logging
+            if (isInitialized(server)) {
+                log.fine(server.getName() + " is available again, already initialized");
+                // initServer schedules the daily ayah otherwise, and a server unavailable at startup never had it
+                ayahScheduler.update(server);
+                return;
+            }
+
+            initServer(server);
+        });
 
         discordApi.addServerMemberJoinListener(event -> {
             User user = event.getUser();
@@ -174,10 +341,19 @@ public class HalalBot {
             // add the approval role to the user if they just joined
             server.getRolesByNameIgnoreCase("Approval").stream()
                     .findFirst()
-                    .ifPresent(role -> getOrRuntimeException(server.addRoleToUser(user, role)));
-
-            getOrCreateLimboChannel(server).sendMessage(user.getMentionTag() + " welcome to " + server.getName() + "!\n" +
-                    "To be able to join in on the conversation, please begin the application process by typing `*apply`.");
+                    .ifPresent(role -> server.addRoleToUser(user, role).exceptionally(BotExecutor::logFailure));
+
+            // during a lockdown the welcomes are held back longer so a raid only produces a handful of messages
+            long welcomeDelay = raidProtection.onMemberJoin(server, user)
+                    ? TimeUnit.SECONDS.toMillis(config.raidDigestSeconds)
+                    : config.coalesceWindowMillis;
+
+            getOrCreateLimboChannel(server)
+                    .thenAccept(limboChannel -> messageCoalescer.send(limboChannel, user.getMentionTag(),
+                            "welcome to " + server.getName() + "!\n" +
+                            "To be able to join in on the conversation, please begin the application process by typing `*apply`.",
+                            welcomeDelay, TimeUnit.MILLISECONDS))
+                    .exceptionally(BotExecutor::logFailure);
         });
 
         discordApi.addServerMemberLeaveListener(event -> {
@@ -187,18 +363,19 @@ public class HalalBot {
 
             log.info(user.getName() + " left " + server.getName() + "! Deleting channel if exists");
 
-            for (ServerTextChannel channel : server.getTextChannelsByName(getApprovalChannelName(user))) {
+            ticketQueue.remove(server.getId(), user.getId());
+
+            approvalChannelIndex.find(server, user.getId()).ifPresent(channel -> {
                 log.info("Deleted channel " + channel.getName());
-                deleteChannel(channel, "User left the server");
-            }
+                deleteChannel(channel, "User left the server", TicketArchive.Outcome.CLOSED, null);
+            });
         });
 
         discordApi.addMessageCreateListener(event -> {
             if (event.getMessageAuthor().isRegularUser()
                     && !event.getMessageAuthor().isServerAdmin()) {
                 event.getServerTextChannel().ifPresent(channel ->
-                        counters.computeIfAbsent(channel.getId(), id ->
-                                new TimedCounter(channel)).increment());
+                        slowmodeRegistry.recordActivity(channel, getServerData(channel.getServer())));
             }
         });
 
@@ -210,79 +387,206 @@ public class HalalBot {
             }
         });
 
-        discordApi.addMessageCreateListener(event -> event
-                .getServerTextChannel().ifPresent(channel ->
-                        event.getMessageAuthor().asUser().ifPresent(user ->
-                                commandGroups.forEach(p -> p.parseMessage(channel.getServer(), user, channel, event.getMessage())))));
+        discordApi.addMessageCreateListener(commandDispatcher::dispatch);
+
+        discordApi.addMessageCreateListener(event -> event.getServerTextChannel()
+                .filter(ApprovalChannelIndex::isApprovalChannel)
+                .ifPresent(channel -> {
+                    transcriptRecorder.recordCreate(channel.getId(), event.getMessage());
+                    ticketReaper.recordActivity(channel);
+                }));
+        discordApi.addMessageEditListener(event -> event.getServerTextChannel()
+                .filter(ApprovalChannelIndex::isApprovalChannel)
+                .ifPresent(channel -> transcriptRecorder.recordEdit(channel.getId(), event.getMessageId(),
+                        event.getNewContent())));
+        discordApi.addMessageDeleteListener(event -> event.getServerTextChannel()
+                .filter(ApprovalChannelIndex::isApprovalChannel)
+                .ifPresent(channel -> transcriptRecorder.recordDelete(channel.getId(), event.getMessageId())));
+        discordApi.addServerChannelDeleteListener(event -> transcriptRecorder.discard(event.getChannel().getId()));
+
+        discordApi.addServerChannelCreateListener(event -> approvalChannelIndex.add(event.getChannel()));
+        discordApi.addServerChannelDeleteListener(event -> {
+            ticketReaper.forget(event.getChannel().getId());
+
+            if (approvalChannelIndex.remove(event.getChannel())) {
+                promoteWaitingApplicant(event.getServer());
+            }
+        });
+        discordApi.addServerChannelChangeNameListener(event ->
+                approvalChannelIndex.rename(event.getChannel(), event.getOldName()));
+
+        // any of these can change which role a name lookup finds
+        discordApi.addRoleCreateListener(event -> roleCache.invalidate(event.getServer()));
+        discordApi.addRoleDeleteListener(event -> roleCache.invalidate(event.getServer()));
+        discordApi.addRoleChangeNameListener(event -> roleCache.invalidate(event.getServer()));
+
+        if (quranPager != null) {
+            discordApi.addReactionAddListener(quranPager::onReactionAdd);
+        }
     }
 
-    public void createApprovalChannelIfAbsent(Server server, User user) {
-        Optional<ServerTextChannel> existingChannelOptional = getApprovalChannel(server, user);
+    public CompletableFuture<Void> createApprovalChannelIfAbsent(Server server, User user) {
+        return inTicketOrder(server, () -> openTicket(server, user, null));
+    }
+
+    /**
+     * Runs ticket openings for a server one at a time, so two applicants can't both take the last free spot.
+     */
+    private CompletableFuture<Void> inTicketOrder(Server server, Supplier<CompletableFuture<Void>> opening) {
+        CompletableFuture<Void> turn = new CompletableFuture<>();
+        CompletableFuture<Void> previous = ticketOpenings.put(server.getId(), turn);
+
+        CompletableFuture<Void> opened = (previous == null ? CompletableFuture.<Void>completedFuture(null) : previous)
+                .thenCompose(ignored -> opening.get());
+
+        opened.whenComplete((done, throwable) -> turn.complete(null));
+        return opened;
+    }
+
+    /**
+     * @param promoted the queue entry the applicant was taken from, null if they applied just now
+     */
+    private CompletableFuture<Void> openTicket(Server server, User user, @Nullable TicketQueue.Waiting promoted) {
+        Optional<ServerTextChannel> existingChannelOptional = approvalChannelIndex.find(server, user.getId());
 
         if (existingChannelOptional.isPresent()) {
             ServerTextChannel channel = existingChannelOptional.get();
 
             if (channel.canSee(user)) {
                 channel.sendMessage(user.getMentionTag() + " this channel already exists!");
-                return;
+                reusedForPromoted(server, promoted);
+                return CompletableFuture.completedFuture(null);
             }
 
-            channel.createUpdater()
+            return channel.createUpdater()
                     .addPermissionOverwrite(user, new PermissionsBuilder()
                             .setAllowed(PermissionType.VIEW_CHANNEL).build())
-                    .update();
+                    .update()
+                    .thenRun(() -> {
+                        notifyOfApprovalChannel(server, user, channel);
+                        reusedForPromoted(server, promoted);
+                    });
+        }
+
+        if (promoted == null) {
+            int position = ticketQueue.getPosition(server.getId(), user.getId());
 
-            notifyOfApprovalChannel(server, user, channel);
-            return;
+            if (position != 0) {
+                return notifyOfQueuePosition(server, user, position);
+            }
+
+            // whoever is waiting already goes first, even if a spot has just opened up
+            if (ticketQueue.getWaitingCount(server.getId()) > 0) {
+                CompletableFuture<Void> queued = notifyOfQueuePosition(server, user,
+                        ticketQueue.enqueue(server.getId(), user.getId()));
+                promoteWaitingApplicant(server);
+                return queued;
+            }
         }
 
         String channelName = getApprovalChannelName(user);
 
-        Preconditions.checkState(server.getChannelsByName(channelName).isEmpty());
+        return getApprovalCategory(server).thenCompose(optionalCategory -> {
+            if (!optionalCategory.isPresent()) {
+                if (promoted != null) {
+                    ticketQueue.requeue(server.getId(), promoted);
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                return notifyOfQueuePosition(server, user, ticketQueue.enqueue(server.getId(), user.getId()));
+            }
+
+            ChannelCategory category = optionalCategory.get();
+
+            return getApprovalModeratorRole(server)
+                    .thenCompose(moderatorRole -> server.createTextChannelBuilder()
+                            .setName(channelName)
+                            .setCategory(category)
+                            .addPermissionOverwrite(server.getEveryoneRole(), new PermissionsBuilder()
+                                    .setDenied(PermissionType.VIEW_CHANNEL).build())
+                            .addPermissionOverwrite(moderatorRole, new PermissionsBuilder()
+                                    .setAllowed(PermissionType.VIEW_CHANNEL).build())
+                            .addPermissionOverwrite(discordApi.getYourself(), new PermissionsBuilder()
+                                    .setAllowed(PermissionType.VIEW_CHANNEL).build())
+                            .addPermissionOverwrite(user, new PermissionsBuilder()
+                                    .setAllowed(PermissionType.VIEW_CHANNEL).build())
+                            .create())
+                    .thenAccept(channel -> {
+                        // the create event may come later, and a second *apply mustn't miss the channel until then
+                        approvalChannelIndex.add(channel);
+                        notifyOfApprovalChannel(server, user, channel);
+
+                        if (promoted != null) {
+                            ticketQueue.promoted(promoted);
+                        }
+                    });
+        });
+    }
 
-        String approvalCategoryName = "Approval";
-        ChannelCategory category = server.getChannelCategoriesByName(approvalCategoryName).stream()
-                .findFirst().orElseGet(() -> getOrRuntimeException(server
+    /**
+     * @return the first approval category with room for another ticket, creating overflow categories up to the
+     * configured number, or empty if they are all full
+     */
+    private CompletableFuture<Optional<ChannelCategory>> getApprovalCategory(Server server) {
+        for (int number = 1; number <= config.approvalMaxCategories; number++) {
+            String name = number == 1 ? "Approval" : "Approval " + number;
+            List<ChannelCategory> categories = server.getChannelCategoriesByName(name);
+
+            if (categories.isEmpty()) {
+                return createOnce(server, "approval-category-" + number, () -> server
                         .createChannelCategoryBuilder()
-                        .setAuditLogReason("Approval category missing, created it.")
-                        .setName(approvalCategoryName)
-                        .create()));
-
-        if (category.getChannels().size() == 50) {
-            Optional<RegularServerChannel> serverChannel = category.getChannels().stream()
-                    .filter(channel -> channel.getName().startsWith("approval-"))
-                    .min(Comparator.comparing(DiscordEntity::getCreationTimestamp));
-
-            Optional<ServerTextChannel> textChannel;
-
-            if (serverChannel.isPresent()
-                    && (textChannel = serverChannel.get().asServerTextChannel())
-                    .isPresent()) {
-                closeApprovalChannel(textChannel.get(),
-                        "The category is full", null);
-            } else {
-                getOrCreateLimboChannel(server).sendMessage(user.getMentionTag()
-                        + " there were too many approval tickets to process"
-                        + " your request! Please ask an approval moderator to"
-                        + " clear some old ones.");
-                return;
+                        .setAuditLogReason(name.equals("Approval") ? "Approval category missing, created it."
+                                : "Approval categories full, created an overflow category.")
+                        .setName(name)
+                        .create())
+                        .thenApply(Optional::of);
+            }
+
+            for (ChannelCategory category : categories) {
+                if (category.getChannels().size() < CATEGORY_CHANNEL_LIMIT) {
+                    return CompletableFuture.completedFuture(Optional.of(category));
+                }
             }
         }
 
-        ServerTextChannel channel = getOrRuntimeException(server.createTextChannelBuilder()
-                .setName(channelName)
-                .setCategory(category)
-                .addPermissionOverwrite(server.getEveryoneRole(), new PermissionsBuilder()
-                        .setDenied(PermissionType.VIEW_CHANNEL).build())
-                .addPermissionOverwrite(getApprovalModeratorRole(server), new PermissionsBuilder()
-                        .setAllowed(PermissionType.VIEW_CHANNEL).build())
-                .addPermissionOverwrite(discordApi.getYourself(), new PermissionsBuilder()
-                        .setAllowed(PermissionType.VIEW_CHANNEL).build())
-                .addPermissionOverwrite(user, new PermissionsBuilder()
-                        .setAllowed(PermissionType.VIEW_CHANNEL).build())
-                .create());
+        return CompletableFuture.completedFuture(Optional.empty());
+    }
+
+    /**
+     * Opens a ticket for whoever has waited longest, if anyone is waiting and there is room.
+     */
+    private void promoteWaitingApplicant(Server server) {
+        ticketQueue.poll(server.getId()).ifPresent(waiting -> {
+            Optional<User> applicant = server.getMemberById(waiting.getUserId());
+
+            if (!applicant.isPresent()) {
+                promoteWaitingApplicant(server);
+                return;
+            }
+
+            inTicketOrder(server, () -> openTicket(server, applicant.get(), waiting))
+                    .whenComplete((done, throwable) -> {
+                        // keep their place for the next ticket that closes
+                        if (throwable != null) {
+                            ticketQueue.requeue(server.getId(), waiting);
+                        }
+                    })
+                    .exceptionally(BotExecutor::logFailure);
+        });
+    }
+
+    // a promoted applicant who still had their channel waited all the same, but leaves the free spot to the next one
+    private void reusedForPromoted(Server server, @Nullable TicketQueue.Waiting promoted) {
+        if (promoted != null) {
+            ticketQueue.promoted(promoted);
+            promoteWaitingApplicant(server);
+        }
+    }
 
-        notifyOfApprovalChannel(server, user, channel);
+    private CompletableFuture<Void> notifyOfQueuePosition(Server server, User user, int position) {
+        return getOrCreateLimboChannel(server).thenAccept(limboChannel -> messageCoalescer.send(limboChannel,
+                user.getMentionTag(), "every approval channel is taken right now, you are #" + position
+                        + " in line. You'll be pinged in your approval channel once it opens."));
     }
 
     private void notifyOfApprovalChannel(Server server, User user, ServerTextChannel channel) {
@@ -322,75 +626,85 @@ public class HalalBot {
         String whoDoneIt = closer == null ? "automatically" : "by " + closer.getName();
 
         discordApi.getUserById(channelName.replaceFirst("approval-", ""))
-                .thenAccept(user -> getOrCreateLimboChannel(channel.getServer())
-                        .sendMessage(user.getMentionTag() + " your approval ticket has been closed "
+                .thenAcceptBoth(getOrCreateLimboChannel(channel.getServer()), (user, limboChannel) ->
+                        messageCoalescer.send(limboChannel, user.getMentionTag(), "your approval ticket has been closed "
                                 + whoDoneIt + ". Reason: " + reason + "\n\n" +
-                                "Please say `*apply` in this limbo channel to apply again.")
-                );
+                                "Please say `*apply` in this limbo channel to apply again."))
+                .exceptionally(BotExecutor::logFailure);
 
-        deleteChannel(channel, "Approval channel closed " + whoDoneIt + ". Reason: '" + reason + "'");
+        deleteChannel(channel, "Approval channel closed " + whoDoneIt + ". Reason: '" + reason + "'",
+                TicketArchive.Outcome.CLOSED, closer);
     }
 
-    public ServerTextChannel getOrCreateLimboChannel(Server server) {
-        return server.getTextChannelById(getServerData(server).getLimboChannel()).orElseGet(() -> {
-                    ServerTextChannel channel = server.getTextChannelsByNameIgnoreCase("approval").stream().findFirst().orElseGet(() -> {
-                        log.info("Creating limbo #approval channel!");
-                        return getOrRuntimeException(server.createTextChannelBuilder().setName("approval").create());
-                    });
+    public CompletableFuture<ServerTextChannel> getOrCreateLimboChannel(Server server) {
+        Optional<ServerTextChannel> knownChannel = server.getTextChannelById(getServerData(server).getLimboChannel());
+
+        if (knownChannel.isPresent()) {
+            return CompletableFuture.completedFuture(knownChannel.get());
+        }
 
-                    getServerData(server).setLimboChannel(channel.getId());
-                    saveData();
+        return createOnce(server, "limbo-channel", () -> firstOrCreate(server.getTextChannelsByNameIgnoreCase("approval"), () -> {
+                    log.info("Creating limbo #approval channel!");
+                    return server.createTextChannelBuilder().setName("approval").create();
+                }).thenApply(channel -> {
+                    updateServerData(server, ServerDataChange.limboChannel(channel.getId()));
 
                     return channel;
-                }
+                })
         );
     }
 
-    public ServerTextChannel getOrCreateJailChannel(Server server) {
-        return server.getTextChannelById(getServerData(server).getJailChannel()).orElseGet(() -> {
-                    ServerTextChannel channel = server.getTextChannelsByNameIgnoreCase("jail").stream().findFirst().orElseGet(() -> {
-                        log.info("Creating #jail channel!");
-                        return getOrRuntimeException(server.createTextChannelBuilder().setName("jail")
-                                .addPermissionOverwrite(server.getEveryoneRole(), new PermissionsBuilder()
-                                        .setDenied(PermissionType.VIEW_CHANNEL).build())
-                                .addPermissionOverwrite(getApprovalModeratorRole(server), new PermissionsBuilder()
-                                        .setAllowed(PermissionType.VIEW_CHANNEL).build())
-                                .addPermissionOverwrite(getJailedRole(server), new PermissionsBuilder()
-                                        .setAllowed(PermissionType.VIEW_CHANNEL).build())
-                                .addPermissionOverwrite(discordApi.getYourself(), new PermissionsBuilder()
-                                        .setAllowed(PermissionType.VIEW_CHANNEL).build())
-                                .create());
-                    });
+    public CompletableFuture<ServerTextChannel> getOrCreateJailChannel(Server server) {
+        Optional<ServerTextChannel> knownChannel = server.getTextChannelById(getServerData(server).getJailChannel());
+
+        if (knownChannel.isPresent()) {
+            return CompletableFuture.completedFuture(knownChannel.get());
+        }
 
-                    getServerData(server).setJailChannel(channel.getId());
-                    saveData();
+        return createOnce(server, "jail-channel", () -> firstOrCreate(server.getTextChannelsByNameIgnoreCase("jail"), () -> {
+                    log.info("Creating #jail channel!");
+                    return getApprovalModeratorRole(server).thenCombine(getJailedRole(server), (moderatorRole, jailedRole) ->
+                            server.createTextChannelBuilder().setName("jail")
+                                    .addPermissionOverwrite(server.getEveryoneRole(), new PermissionsBuilder()
+                                            .setDenied(PermissionType.VIEW_CHANNEL).build())
+                                    .addPermissionOverwrite(moderatorRole, new PermissionsBuilder()
+                                            .setAllowed(PermissionType.VIEW_CHANNEL).build())
+                                    .addPermissionOverwrite(jailedRole, new PermissionsBuilder()
+                                            .setAllowed(PermissionType.VIEW_CHANNEL).build())
+                                    .addPermissionOverwrite(discordApi.getYourself(), new PermissionsBuilder()
+                                            .setAllowed(PermissionType.VIEW_CHANNEL).build())
+                    ).thenCompose(ServerTextChannelBuilder::create);
+                }).thenApply(channel -> {
+                    updateServerData(server, ServerDataChange.jailChannel(channel.getId()));
 
                     return channel;
-                }
+                })
         );
     }
 
-    public ServerTextChannel getOrCreateLogsChannel(Server server) {
-        return server.getTextChannelById(getServerData(server).getLogsChannel()).orElseGet(() -> {
-                    ServerTextChannel channel = server.getTextChannelsByNameIgnoreCase("approval-logs").stream()
-                            .findFirst().orElseGet(() -> {
-                                log.info("Creating logs #approval-logs channel!");
-                                return getOrRuntimeException(server.createTextChannelBuilder()
-                                        .setName("approval-logs")
-                                        .addPermissionOverwrite(server.getEveryoneRole(), new PermissionsBuilder()
-                                                .setDenied(PermissionType.VIEW_CHANNEL).build())
-                                        .addPermissionOverwrite(getApprovalModeratorRole(server), new PermissionsBuilder()
-                                                .setAllowed(PermissionType.VIEW_CHANNEL).build())
-                                        .addPermissionOverwrite(discordApi.getYourself(), new PermissionsBuilder()
-                                                .setAllowed(PermissionType.VIEW_CHANNEL).build())
-                                        .create());
-                            });
-
-                    getServerData(server).setLogsChannel(channel.getId());
-                    saveData();
+    public CompletableFuture<ServerTextChannel> getOrCreateLogsChannel(Server server) {
+        Optional<ServerTextChannel> knownChannel = server.getTextChannelById(getServerData(server).getLogsChannel());
+
+        if (knownChannel.isPresent()) {
+            return CompletableFuture.completedFuture(knownChannel.get());
+        }
+
+        return createOnce(server, "logs-channel", () -> firstOrCreate(server.getTextChannelsByNameIgnoreCase("approval-logs"), () -> {
+                    log.info("Creating logs #approval-logs channel!");
+                    return getApprovalModeratorRole(server).thenCompose(moderatorRole -> server.createTextChannelBuilder()
+                            .setName("approval-logs")
+                            .addPermissionOverwrite(server.getEveryoneRole(), new PermissionsBuilder()
+                                    .setDenied(PermissionType.VIEW_CHANNEL).build())
+                            .addPermissionOverwrite(moderatorRole, new PermissionsBuilder()
+                                    .setAllowed(PermissionType.VIEW_CHANNEL).build())
+                            .addPermissionOverwrite(discordApi.getYourself(), new PermissionsBuilder()
+                                    .setAllowed(PermissionType.VIEW_CHANNEL).build())
+                            .create());
+                }).thenApply(channel -> {
+                    updateServerData(server, ServerDataChange.logsChannel(channel.getId()));
 
                     return channel;
-                }
+                })
         );
     }
 
@@ -398,44 +712,156 @@ public class HalalBot {
         return "approval-" + user.getIdAsString();
     }
 
-    private Optional<ServerTextChannel> getApprovalChannel(Server server, User user) {
-        return server.getTextChannels().stream()
-                .filter(channel -> {
-                    Optional<ChannelCategory> channelCategory = channel.getCategory();
-                    return channelCategory.isPresent() && channelCategory.get().getName().startsWith("Approval");
-                })
-                .filter(channel -> channel.getName().equals(getApprovalChannelName(user)))
-                .findFirst();
+    public File getDataFolder() {
+        return dataFolder;
     }
 
     public DiscordApi getDiscordApi() {
         return discordApi;
     }
 
+    public BotExecutor getExecutor() {
+        return executor;
+    }
+
+    public ActionScheduler getActionScheduler() {
+        return actionScheduler;
+    }
+
+    public SlowmodeRegistry getSlowmodeRegistry() {
+        return slowmodeRegistry;
+    }
+
+    public RaidProtection getRaidProtection() {
+        return raidProtection;
+    }
+
+    public MessageCoalescer getMessageCoalescer() {
+        return messageCoalescer;
+    }
+
+    public QuranLibrary getQuranLibrary() {
+        return quranLibrary;
+    }
+
+    /**
+     * @return the pager, or null if the Quran corpus couldn't be loaded
+     */
+    public QuranPager getQuranPager() {
+        return quranPager;
+    }
+
+    public AyahScheduler getAyahScheduler() {
+        return ayahScheduler;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    public ServerDataRepository getServerDataRepository() {
+        return serverDataRepository;
+    }
+
     public ServerData getServerData(Server server) {
-        return serverDataMap.computeIfAbsent(server.getId(),
-                id -> new ServerData());
+        return serverDataRepository.get(server.getId());
+    }
+
+    public TicketReaper getTicketReaper() {
+        return ticketReaper;
+    }
+
+    public TicketQueue getTicketQueue() {
+        return ticketQueue;
+    }
+
+    public RoleCache getRoleCache() {
+        return roleCache;
+    }
+
+    public ApprovalChannelIndex getApprovalChannelIndex() {
+        return approvalChannelIndex;
     }
 
-    public void deleteChannel(ServerTextChannel channel, String reason) {
+    public TicketArchive getTicketArchive() {
+        return ticketArchive;
+    }
+
+    public TranscriptRecorder getTranscriptRecorder() {
+        return transcriptRecorder;
+    }
+
+    public void deleteChannel(ServerTextChannel channel, String reason, TicketArchive.Outcome outcome,
+                              @Nullable User moderator) {
+        String header = "Logs from approval channel " + channel.getName() + " (Deletion reason: `" + reason + "`)";
+
+        // reading the transcript blocks, so it runs on the executor rather than the calling listener thread
+        CompletableFuture.supplyAsync(() -> beginArchive(channel, reason, outcome, moderator), executor)
+                .thenCompose(archived -> CompletableFuture.supplyAsync(() -> writeTranscript(channel, header, archived), executor)
+                        .thenCombine(getOrCreateLogsChannel(channel.getServer()), TranscriptWriter::send)
+                        .thenCompose(sent -> sent)
+                        // the channel is only deleted once its log is posted, a failed upload leaves it to be closed again
+                        .thenCompose(sent -> channel.delete(reason))
+                        .thenRun(() -> {
+                            try {
+                                archived.commit();
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        })
+                        .whenComplete((done, throwable) -> {
+                            if (throwable != null) {
+                                archived.abort();
+                            }
+                        }))
+                .exceptionally(BotExecutor::logFailure);
+    }
+
+    private TicketArchive.Draft beginArchive(ServerTextChannel channel, String reason, TicketArchive.Outcome outcome,
+                                             @Nullable User moderator) {
+        long userId;
         try {
-            String log = channel.getMessagesAsStream()
-                    .map(m -> "[" + m.getCreationTimestamp().atZone(ZoneId.systemDefault()).toString() + "] " +
+            userId = Long.parseLong(channel.getName().replaceFirst("approval-", ""));
+        } catch (NumberFormatException e) {
+            userId = 0;
+        }
+
+        try {
+            return ticketArchive.begin(channel.getId(), channel.getServer().getId(), userId,
+                    moderator == null ? 0 : moderator.getId(), outcome, reason);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private TranscriptWriter writeTranscript(ServerTextChannel channel, String header, TicketArchive.Draft archived) {
+        TranscriptWriter writer = new TranscriptWriter(header, channel.getName(), config.transcriptMaxMessages);
+        TranscriptRecorder.LineWriter both = line -> {
+            writer.writeLine(line);
+            archived.writeLine(line);
+        };
+
+        try {
+            if (!transcriptRecorder.writeTranscript(channel.getId(), both)) {
+                // only tickets opened before transcripts were recorded, or while the bot was offline, get here
+                Iterator<Message> history = channel.getMessagesAsStream().iterator();
+                while (history.hasNext()) {
+                    Message m = history.next();
+                    both.writeLine("[" + m.getCreationTimestamp().atZone(ZoneId.systemDefault()).toString() + "] " +
                             m.getAuthor().getDisplayName() +
                             " (" + m.getAuthor().getDiscriminatedName() + ")" + ": " +
                             m.getReadableContent() +
-                            (m.getLastEditTimestamp().isPresent() ? "(edited)" : ""))
-                    .collect(Collectors.joining("\n"));
-
-            getOrCreateLogsChannel(channel.getServer()).sendMessage(
-                    "Logs from approval channel " + channel.getName() + " (Deletion reason: `" + reason + "`)\n" +
-                            "```Log\n" +
-                            log + "" +
-                            "\n```");
-        } catch (Exception e) {
-            e.printStackTrace();
+                            (m.getLastEditTimestamp().isPresent() ? "(edited)" : ""));
+                }
+            }
+        } catch (IOException e) {
+            writer.close();
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            writer.close();
+            throw e;
         }
 
-        channel.delete(reason);
+        return writer;
     }
 }
@@ -12,15 +12,12 @@ import java.nio.file.StandardOpenOption;
 
 public class Main {
     public static void main(String[] args) throws IOException {
-        String token;
-        String dataFolderPath;
+        Config config;
 
         File configFile = new File("halalbot.json");
         if (configFile.exists()) {
             try (FileReader reader = new FileReader(configFile)) {
-                Config config = new Gson().fromJson(reader, Config.class);
-                token = config.token;
-                dataFolderPath = config.dataFolder;
+                config = new Gson().fromJson(reader, Config.class);
             }
         } else {
             Options options = new Options();
@@ -40,11 +37,12 @@ public class Main {
                 return;
             }
 
-            token = line.getOptionValue("token");
-            dataFolderPath = line.getOptionValue("datafolder");
+            config = new Config();
+            config.token = line.getOptionValue("token");
+            config.dataFolder = line.getOptionValue("datafolder");
         }
 
-        File dataFolder = new File(dataFolderPath);
+        File dataFolder = new File(config.dataFolder);
 
         if (dataFolder.mkdirs()) {
             System.out.println("Created data folder " + dataFolder.getPath());
@@ -67,7 +65,7 @@ public class Main {
                     System.exit(3);
                 }
 
-                new HalalBot(dataFolder, token);
+                new HalalBot(dataFolder, config);
             }
         } catch (IOException e) {
             e.printStackTrace();
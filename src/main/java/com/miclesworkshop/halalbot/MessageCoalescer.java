@@ -0,0 +1,175 @@
+package com.miclesworkshop.halalbot;
+
+import org.javacord.api.entity.channel.TextChannel;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbound message pipeline that holds notices for a channel for a short window and then sends them as few
+ * messages as possible. Notices with the same text are merged into one line that mentions every recipient,
+ * and the lines are packed into messages that stay under Discord's character limit.
+ */
+public class MessageCoalescer {
+    static final int MESSAGE_LIMIT = 2000;
+
+    private final ScheduledExecutorService scheduler;
+    private final long windowMillis;
+
+    private final Map<Long, Batch> batches = new ConcurrentHashMap<>();
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+
+    public MessageCoalescer(ScheduledExecutorService scheduler, long window, TimeUnit unit) {
+        this.scheduler = scheduler;
+        this.windowMillis = unit.toMillis(window);
+    }
+
+    /**
+     * Queues {@code mention + " " + text} for the channel, to be sent within the default window.
+     */
+    public void send(TextChannel channel, String mention, String text) {
+        send(channel, mention, text, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a notice for the channel. If nothing is pending for the channel yet, it is flushed after
+     * {@code delay}; otherwise it goes out with the batch that is already waiting.
+     *
+     * @param mention the recipient to mention in front of the text, or null for a plain notice
+     */
+    public void send(TextChannel channel, String mention, String text, long delay, TimeUnit unit) {
+        Batch batch = batches.computeIfAbsent(channel.getId(), id -> new Batch(channel));
+        batch.notices.add(new Notice(mention, text));
+        queued.incrementAndGet();
+
+        if (batch.scheduled.compareAndSet(false, true)) {
+            scheduler.schedule(() -> flush(batch), delay, unit);
+        }
+    }
+
+    public long getQueuedCount() {
+        return queued.get();
+    }
+
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    public long getSavedSends() {
+        return queued.get() - sent.get() - getPendingCount();
+    }
+
+    public long getPendingCount() {
+        return batches.values().stream().mapToLong(batch -> batch.notices.size()).sum();
+    }
+
+    private void flush(Batch batch) {
+        batch.scheduled.set(false);
+
+        // group by text, keeping the order each text was first queued in
+        Map<String, List<String>> mentionsByText = new LinkedHashMap<>();
+        Notice notice;
+        while ((notice = batch.notices.poll()) != null) {
+            List<String> mentions = mentionsByText.computeIfAbsent(notice.text, text -> new ArrayList<>());
+
+            if (notice.mention != null) {
+                mentions.add(notice.mention);
+            }
+        }
+
+        List<String> lines = new ArrayList<>();
+        mentionsByText.forEach((text, mentions) -> lines.addAll(mentionLines(mentions, text)));
+
+        CompletableFuture<?> chain = CompletableFuture.completedFuture(null);
+        for (String message : pack(lines)) {
+            sent.incrementAndGet();
+            chain = chain.thenCompose(previous -> batch.channel.sendMessage(message));
+        }
+        chain.exceptionally(BotExecutor::logFailure);
+    }
+
+    private static List<String> mentionLines(List<String> mentions, String text) {
+        List<String> lines = new ArrayList<>();
+
+        if (mentions.isEmpty()) {
+            lines.add(text);
+            return lines;
+        }
+
+        StringBuilder line = new StringBuilder();
+        for (String mention : mentions) {
+            if (line.length() > 0 && line.length() + 1 + mention.length() + 1 + text.length() > MESSAGE_LIMIT) {
+                lines.add(line + " " + text);
+                line.setLength(0);
+            }
+
+            line.append(line.length() == 0 ? "" : " ").append(mention);
+        }
+        lines.add(line + " " + text);
+
+        return lines;
+    }
+
+    // packs lines into as few messages as possible, cutting any single line that is too long by itself
+    static List<String> pack(List<String> lines) {
+        List<String> messages = new ArrayList<>();
+        StringBuilder message = new StringBuilder();
+
+        for (String line : lines) {
+            while (line.length() > MESSAGE_LIMIT) {
+                if (message.length() > 0) {
+                    messages.add(message.toString());
+                    message.setLength(0);
+                }
+
+                messages.add(line.substring(0, MESSAGE_LIMIT));
+                line = line.substring(MESSAGE_LIMIT);
+            }
+
+            if (message.length() > 0 && message.length() + 2 + line.length() > MESSAGE_LIMIT) {
+                messages.add(message.toString());
+                message.setLength(0);
+            }
+
+            message.append(message.length() == 0 ? "" : "\n\n").append(line);
+        }
+
+        if (message.length() > 0) {
+            messages.add(message.toString());
+        }
+
+        return messages;
+    }
+
+    private static final class Batch {
+        private final TextChannel channel;
+        private final Queue<Notice> notices = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private Batch(TextChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private static final class Notice {
+        private final String mention;
+        private final String text;
+
+        private Notice(String mention, String text) {
+            this.mention = mention;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.miclesworkshop.halalbot;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.miclesworkshop.halalbot.quran.QuranRenderer;
+import com.miclesworkshop.halalbot.quran.Translation;
+import org.javacord.api.entity.channel.TextChannel;
+import org.javacord.api.entity.message.Message;
+import org.javacord.api.entity.message.embed.EmbedBuilder;
+import org.javacord.api.entity.user.User;
+import org.javacord.api.event.message.reaction.ReactionAddEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shows Quran ranges one embed page at a time. Ranges that need more than one page get previous/next reactions,
+ * and each page is only rendered when someone turns to it. Sessions are keyed by message id, expire once nobody
+ * has turned a page for a while and are capped in number.
+ */
+public class QuranPager {
+    private static final String PREVIOUS = "\u25c0";
+    private static final String NEXT = "\u25b6";
+
+    private final QuranRenderer renderer;
+    private final Cache<Long, Session> sessions;
+
+    public QuranPager(QuranRenderer renderer, ScheduledExecutorService scheduler, long idleTime, TimeUnit unit,
+                      long maxSessions) {
+        this.renderer = renderer;
+        this.sessions = CacheBuilder.newBuilder()
+                .expireAfterAccess(idleTime, unit)
+                .maximumSize(maxSessions)
+                .build();
+
+        scheduler.scheduleWithFixedDelay(sessions::cleanUp, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public void show(TextChannel channel, User user, QuranRenderer.Mode mode, Translation translation, int surah,
+                     int first, int last) {
+        Session session = new Session(user.getId(), mode, translation, surah, first, last);
+        QuranRenderer.Page page = session.currentPage();
+
+        channel.sendMessage(toEmbed(session, page)).thenAccept(message -> {
+            if (page.getLastAyah() < last) {
+                session.message = message;
+                sessions.put(message.getId(), session);
+                message.addReactions(PREVIOUS, NEXT).exceptionally(BotExecutor::logFailure);
+            }
+        }).exceptionally(BotExecutor::logFailure);
+    }
+
+    public void onReactionAdd(ReactionAddEvent event) {
+        Session session = sessions.getIfPresent(event.getMessageId());
+
+        // only the person who asked may turn the pages, which also skips the bot's own reactions
+        if (session == null || event.getUserId() != session.userId) {
+            return;
+        }
+
+        boolean next = event.getEmoji().equalsEmoji(NEXT);
+        if (!next && !event.getEmoji().equalsEmoji(PREVIOUS)) {
+            return;
+        }
+
+        // lets the reaction be used again; fails quietly without the Manage Messages permission
+        event.removeReaction().exceptionally(throwable -> null);
+
+        EmbedBuilder embed;
+        synchronized (session) {
+            QuranRenderer.Page page = next ? session.next() : session.previous();
+
+            if (page == null) {
+                return;
+            }
+
+            embed = toEmbed(session, page);
+        }
+
+        session.message.edit(embed).exceptionally(BotExecutor::logFailure);
+    }
+
+    public long getSessionCount() {
+        return sessions.size();
+    }
+
+    private EmbedBuilder toEmbed(Session session, QuranRenderer.Page page) {
+        EmbedBuilder embed = new EmbedBuilder();
+        page.getFields().forEach(field -> embed.addField(field.getName(), field.getValue()));
+
+        if (page.getFirstAyah() > session.first || page.getLastAyah() < session.last) {
+            embed.setFooter("Ayahs " + page.getFirstAyah() + "-" + page.getLastAyah() + " of " + session.first + "-"
+                    + session.last + ". React with " + PREVIOUS + " or " + NEXT + " to turn the page.");
+        }
+
+        return embed;
+    }
+
+    private final class Session {
+        private final long userId;
+        private final QuranRenderer.Mode mode;
+        private final Translation translation;
+        private final int surah;
+        private final int first;
+        private final int last;
+
+        // where each page seen so far starts; later pages are only found by rendering the ones before them
+        private final List<Integer> pageStarts = new ArrayList<>();
+        private int page;
+
+        private volatile Message message;
+
+        private Session(long userId, QuranRenderer.Mode mode, Translation translation, int surah, int first,
+                        int last) {
+            this.userId = userId;
+            this.mode = mode;
+            this.translation = translation;
+            this.surah = surah;
+            this.first = first;
+            this.last = last;
+            pageStarts.add(first);
+        }
+
+        private QuranRenderer.Page currentPage() {
+            return renderer.renderPage(mode, translation, surah, pageStarts.get(page), last);
+        }
+
+        private QuranRenderer.Page next() {
+            int end = currentPage().getLastAyah();
+
+            if (end >= last) {
+                return null;
+            }
+
+            if (page + 1 == pageStarts.size()) {
+                pageStarts.add(end + 1);
+            }
+
+            page++;
+            return currentPage();
+        }
+
+        private QuranRenderer.Page previous() {
+            if (page == 0) {
+                return null;
+            }
+
+            page--;
+            return currentPage();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.miclesworkshop.halalbot;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Streaming join-rate analyzer for one server. Keeps the join times and whether each joining account was young
+ * in a ring buffer, slides a window over them, and puts the server into lockdown when the window holds too many
+ * joins overall or too many brand new accounts. Lockdown ends once the window has stayed calm for a while.
+ */
+public class RaidDetector {
+    public enum Transition {
+        NONE,
+        LOCKDOWN_STARTED,
+        LOCKDOWN_ENDED
+    }
+
+    private final Clock clock;
+    private final long windowMillis;
+    private final int joinThreshold;
+    private final long youngAccountMillis;
+    private final int youngAccountThreshold;
+    private final long quietMillis;
+
+    // ring buffer of the joins inside the window, oldest at head
+    private final long[] joinTimes;
+    private final boolean[] youngAccounts;
+    private int head;
+    private int size;
+    private int youngCount;
+
+    private boolean lockedDown;
+    private long lastTriggered;
+
+    public RaidDetector(Clock clock, Duration window, int joinThreshold, Duration youngAccountAge,
+                        int youngAccountThreshold, Duration quietPeriod) {
+        this.clock = clock;
+        this.windowMillis = window.toMillis();
+        this.joinThreshold = joinThreshold;
+        this.youngAccountMillis = youngAccountAge.toMillis();
+        this.youngAccountThreshold = youngAccountThreshold;
+        this.quietMillis = quietPeriod.toMillis();
+
+        // once the window holds joinThreshold joins it has already triggered, so more slots are never needed
+        int capacity = Math.max(joinThreshold, youngAccountThreshold) + 1;
+        this.joinTimes = new long[capacity];
+        this.youngAccounts = new boolean[capacity];
+    }
+
+    public synchronized Transition recordJoin(Instant accountCreated) {
+        long now = clock.millis();
+        expire(now);
+
+        if (size == joinTimes.length) {
+            removeOldest();
+        }
+
+        boolean young = now - accountCreated.toEpochMilli() < youngAccountMillis;
+        int tail = (head + size) % joinTimes.length;
+        joinTimes[tail] = now;
+        youngAccounts[tail] = young;
+        size++;
+
+        if (young) {
+            youngCount++;
+        }
+
+        boolean suspicious = size >= joinThreshold
+                || (youngCount >= youngAccountThreshold && youngCount * 2 >= size);
+
+        if (suspicious) {
+            lastTriggered = now;
+
+            if (!lockedDown) {
+                lockedDown = true;
+                return Transition.LOCKDOWN_STARTED;
+            }
+        }
+
+        return Transition.NONE;
+    }
+
+    /**
+     * Called periodically so lockdown can end even when nobody joins.
+     */
+    public synchronized Transition checkQuiet() {
+        long now = clock.millis();
+        expire(now);
+
+        if (lockedDown && now - lastTriggered >= quietMillis) {
+            lockedDown = false;
+            return Transition.LOCKDOWN_ENDED;
+        }
+
+        return Transition.NONE;
+    }
+
+    public synchronized boolean isLockedDown() {
+        return lockedDown;
+    }
+
+    public synchronized int getJoinsInWindow() {
+        expire(clock.millis());
+        return size;
+    }
+
+    public synchronized int getYoungJoinsInWindow() {
+        expire(clock.millis());
+        return youngCount;
+    }
+
+    private void expire(long now) {
+        while (size > 0 && now - joinTimes[head] >= windowMillis) {
+            removeOldest();
+        }
+    }
+
+    private void removeOldest() {
+        if (youngAccounts[head]) {
+            youngCount--;
+        }
+
+        head = (head + 1) % joinTimes.length;
+        size--;
+    }
+}
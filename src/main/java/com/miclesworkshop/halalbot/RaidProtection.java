@@ -0,0 +1,83 @@
+package com.miclesworkshop.halalbot;
+
+import org.javacord.api.entity.server.Server;
+import org.javacord.api.entity.user.User;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Watches member joins for raids. While a server is in lockdown, new members are still given the approval role
+ * but their welcomes are held back for the digest interval, so the {@link MessageCoalescer} sends them as one
+ * message, and the logs channel is told when lockdown starts and ends.
+ */
+public class RaidProtection {
+    private final Logger log = Logger.getLogger(getClass().getName());
+
+    private final HalalBot bot;
+    private final Config config;
+    private final Clock clock;
+
+    private final Map<Long, RaidDetector> detectors = new ConcurrentHashMap<>();
+
+    public RaidProtection(HalalBot bot, Config config, ScheduledExecutorService scheduler, Clock clock) {
+        this.bot = bot;
+        this.config = config;
+        this.clock = clock;
+
+        scheduler.scheduleWithFixedDelay(this::checkQuiet, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * @return true if the server is in lockdown, in which case the welcome should be held back for the digest interval
+     */
+    public boolean onMemberJoin(Server server, User user) {
+        RaidDetector detector = detectors.computeIfAbsent(server.getId(), id -> new RaidDetector(clock,
+                Duration.ofSeconds(config.raidWindowSeconds), config.raidJoinThreshold,
+                Duration.ofDays(config.raidYoungAccountDays), config.raidYoungAccountThreshold,
+                Duration.ofMinutes(config.raidQuietMinutes)));
+
+        if (detector.recordJoin(user.getCreationTimestamp()) == RaidDetector.Transition.LOCKDOWN_STARTED) {
+            log.warning("Raid detected in " + server.getName() + ", entering lockdown");
+            alert(server, "**Raid detected!** " + detector.getJoinsInWindow() + " members joined in the last "
+                    + config.raidWindowSeconds + " seconds, " + detector.getYoungJoinsInWindow()
+                    + " of them with accounts younger than " + config.raidYoungAccountDays + " days.\n"
+                    + "Lockdown enabled: welcome messages are batched until joins calm down.");
+        }
+
+        return detector.isLockedDown();
+    }
+
+    public boolean isLockedDown(Server server) {
+        RaidDetector detector = detectors.get(server.getId());
+        return detector != null && detector.isLockedDown();
+    }
+
+    public long getLockedDownCount() {
+        return detectors.values().stream().filter(RaidDetector::isLockedDown).count();
+    }
+
+    private void checkQuiet() {
+        detectors.forEach((serverId, detector) -> {
+            if (detector.checkQuiet() != RaidDetector.Transition.LOCKDOWN_ENDED) {
+                return;
+            }
+
+            bot.getDiscordApi().getServerById(serverId).ifPresent(server -> {
+                log.info("Lockdown lifted in " + server.getName());
+                alert(server, "Lockdown lifted, joins have been calm for " + config.raidQuietMinutes + " minutes.");
+            });
+        });
+    }
+
+    private void alert(Server server, String message) {
+        bot.getOrCreateLogsChannel(server)
+                .thenAccept(logsChannel -> logsChannel.sendMessage(message))
+                .exceptionally(BotExecutor::logFailure);
+    }
+}
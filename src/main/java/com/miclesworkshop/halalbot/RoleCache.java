@@ -0,0 +1,105 @@
+package com.miclesworkshop.halalbot;
+
+import org.javacord.api.entity.permission.Role;
+import org.javacord.api.entity.server.Server;
+import org.javacord.api.entity.user.User;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * Remembers which role is each server's approval moderator role and which is its jailed role, so command guards
+ * look a role up by id instead of searching the server's roles by name on every command. Membership is checked on
+ * the role itself, which doesn't build a list of the user's roles. A server's entries are dropped whenever one of
+ * its roles is created, deleted or renamed, since any of those can change which role a name lookup would find.
+ * <p>
+ * Nothing here creates roles: a role that doesn't exist is simply absent, and creating it is left to
+ * {@link HalalBot#getApprovalModeratorRole(Server)} and {@link HalalBot#getJailedRole(Server)}.
+ */
+public class RoleCache {
+    private final ToLongFunction<Server> storedJailedRoleId;
+
+    // server id -> role id
+    private final ConcurrentMap<Long, Long> moderatorRoles = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Long> jailedRoles = new ConcurrentHashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public RoleCache(ToLongFunction<Server> storedJailedRoleId) {
+        this.storedJailedRoleId = storedJailedRoleId;
+    }
+
+    public Optional<Role> getModeratorRole(Server server) {
+        Optional<Role> role = getCached(moderatorRoles, server);
+
+        if (role.isPresent()) {
+            return role;
+        }
+
+        return remember(moderatorRoles, first(server.getRolesByNameIgnoreCase("Approval Moderator")));
+    }
+
+    public Optional<Role> getJailedRole(Server server) {
+        Optional<Role> role = getCached(jailedRoles, server);
+
+        if (role.isPresent()) {
+            return role;
+        }
+
+        role = server.getRoleById(storedJailedRoleId.applyAsLong(server));
+
+        return remember(jailedRoles, role.isPresent() ? role : first(server.getRolesByName("Private Channel")));
+    }
+
+    public boolean isModerator(Server server, User user) {
+        return getModeratorRole(server).map(role -> role.hasUser(user)).orElse(false);
+    }
+
+    public boolean isJailed(Server server, User user) {
+        return getJailedRole(server).map(role -> role.hasUser(user)).orElse(false);
+    }
+
+    public void invalidate(Server server) {
+        moderatorRoles.remove(server.getId());
+        jailedRoles.remove(server.getId());
+    }
+
+    public int size() {
+        return moderatorRoles.size() + jailedRoles.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private Optional<Role> getCached(ConcurrentMap<Long, Long> roles, Server server) {
+        Long roleId = roles.get(server.getId());
+        Optional<Role> role = roleId == null ? Optional.empty() : server.getRoleById(roleId);
+
+        if (role.isPresent()) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+
+        return role;
+    }
+
+    private static Optional<Role> remember(ConcurrentMap<Long, Long> roles, Optional<Role> role) {
+        role.ifPresent(found -> roles.put(found.getServer().getId(), found.getId()));
+        return role;
+    }
+
+    private static Optional<Role> first(List<Role> roles) {
+        return roles.isEmpty() ? Optional.empty() : Optional.of(roles.get(0));
+    }
+}
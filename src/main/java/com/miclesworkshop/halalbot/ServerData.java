@@ -1,25 +1,66 @@
 package com.miclesworkshop.halalbot;
 
+import java.util.Collections;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class ServerData {
-    private Map<String, Long> roles;
+    // concurrent so role lookups never race with role key changes, Gson also deserializes it as one
+    private ConcurrentMap<String, Long> roles;
     private long limboChannel;
     private long jailChannel;
     private long logsChannel;
     private long jailedRoleId;
 
+    // automatic slowmode, see SlowmodeLimiter
+    private int slowmodeThreshold = 32;
+    private int slowmodeWindowSeconds = 60;
+    private int slowmodeCooldownMinutes = 15;
+
+    // id of the translation *quran shows when none is asked for, null for the bot's default
+    private String quranTranslation;
+
+    // daily ayah post, see AyahScheduler; a channel of 0 means it is off
+    private long dailyAyahChannel;
+    private int dailyAyahMinute;
+
+    // approval tickets without messages for this long are closed, see TicketReaper; 0 means never
+    private int ticketTimeoutHours;
+
     public ServerData() {
-        setRoles(new HashMap<>());
+        setRoles(new ConcurrentHashMap<>());
+    }
+
+    public ServerData(ServerData other) {
+        setRoles(other.roles);
+        limboChannel = other.limboChannel;
+        jailChannel = other.jailChannel;
+        logsChannel = other.logsChannel;
+        jailedRoleId = other.jailedRoleId;
+        slowmodeThreshold = other.slowmodeThreshold;
+        slowmodeWindowSeconds = other.slowmodeWindowSeconds;
+        slowmodeCooldownMinutes = other.slowmodeCooldownMinutes;
+        quranTranslation = other.quranTranslation;
+        dailyAyahChannel = other.dailyAyahChannel;
+        dailyAyahMinute = other.dailyAyahMinute;
+        ticketTimeoutHours = other.ticketTimeoutHours;
     }
 
     public Map<String, Long> getRoles() {
-        return roles;
+        return Collections.unmodifiableMap(roles);
     }
 
     public void setRoles(Map<String, Long> roles) {
-        this.roles = roles;
+        this.roles = new ConcurrentHashMap<>(roles);
+    }
+
+    public void putRole(String key, long roleId) {
+        roles.put(key, roleId);
+    }
+
+    public void removeRole(String key) {
+        roles.remove(key);
     }
 
     public long getLimboChannel() {
@@ -53,4 +94,63 @@ public class ServerData {
     public void setJailedRoleId(long jailedRoleId) {
         this.jailedRoleId = jailedRoleId;
     }
+
+    public int getSlowmodeThreshold() {
+        return slowmodeThreshold;
+    }
+
+    public void setSlowmodeThreshold(int slowmodeThreshold) {
+        this.slowmodeThreshold = slowmodeThreshold;
+    }
+
+    public int getSlowmodeWindowSeconds() {
+        return slowmodeWindowSeconds;
+    }
+
+    public void setSlowmodeWindowSeconds(int slowmodeWindowSeconds) {
+        this.slowmodeWindowSeconds = slowmodeWindowSeconds;
+    }
+
+    public int getSlowmodeCooldownMinutes() {
+        return slowmodeCooldownMinutes;
+    }
+
+    public void setSlowmodeCooldownMinutes(int slowmodeCooldownMinutes) {
+        this.slowmodeCooldownMinutes = slowmodeCooldownMinutes;
+    }
+
+    public String getQuranTranslation() {
+        return quranTranslation;
+    }
+
+    public void setQuranTranslation(String quranTranslation) {
+        this.quranTranslation = quranTranslation;
+    }
+
+    public long getDailyAyahChannel() {
+        return dailyAyahChannel;
+    }
+
+    public void setDailyAyahChannel(long dailyAyahChannel) {
+        this.dailyAyahChannel = dailyAyahChannel;
+    }
+
+    /**
+     * @return the minute of the day, in UTC, the daily ayah is posted at
+     */
+    public int getDailyAyahMinute() {
+        return dailyAyahMinute;
+    }
+
+    public void setDailyAyahMinute(int dailyAyahMinute) {
+        this.dailyAyahMinute = dailyAyahMinute;
+    }
+
+    public int getTicketTimeoutHours() {
+        return ticketTimeoutHours;
+    }
+
+    public void setTicketTimeoutHours(int ticketTimeoutHours) {
+        this.ticketTimeoutHours = ticketTimeoutHours;
+    }
 }
@@ -0,0 +1,147 @@
+package com.miclesworkshop.halalbot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free sliding-window message counter for one channel that drives slowmode escalation.
+ * <p>
+ * The window is split into {@link #BUCKETS} buckets, each packing its bucket number and message count into
+ * one long so it can be updated with a single CAS. Once the messages in the window reach the threshold the
+ * limiter escalates: the slowmode delay doubles, the threshold halves and the cooldown is extended. When the
+ * cooldown has passed, the next message resets it. Only the thread whose CAS wins reports a transition, so
+ * each escalation is announced exactly once.
+ */
+public class SlowmodeLimiter {
+    public static final int NO_CHANGE = -1;
+
+    private static final int BUCKETS = 12;
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private static final int BASE_SLOWMODE_SECONDS = 2;
+    private static final int MAX_SLOWMODE_SECONDS = 60;
+
+    private final LongSupplier nanoClock;
+    private final long origin;
+    private final long bucketNanos;
+    private final int threshold;
+    private final long cooldownNanos;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicReference<State> state;
+
+    /**
+     * @param threshold       messages per window that trigger the first escalation
+     * @param windowSeconds   length of the sliding window
+     * @param cooldownMinutes how much each escalation extends the cooldown by
+     * @param nanoClock       monotonic time source, normally {@code System::nanoTime}
+     */
+    public SlowmodeLimiter(int threshold, int windowSeconds, int cooldownMinutes, LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.origin = nanoClock.getAsLong();
+        this.bucketNanos = Math.max(1, TimeUnit.SECONDS.toNanos(windowSeconds) / BUCKETS);
+        this.threshold = threshold;
+        this.cooldownNanos = TimeUnit.MINUTES.toNanos(cooldownMinutes);
+        // bucket numbers start at 1, so the zeroed slots never look current
+        this.state = new AtomicReference<>(new State(0, 0, 1));
+    }
+
+    /**
+     * Counts one message.
+     *
+     * @return the slowmode delay in seconds to apply if this message escalated the limiter, 0 if it ended the
+     * cooldown, or {@link #NO_CHANGE}
+     */
+    public int record() {
+        long now = nanoClock.getAsLong();
+        long bucket = (now - origin) / bucketNanos + 1;
+
+        increment(bucket);
+
+        while (true) {
+            State current = state.get();
+
+            if (current.level > 0 && now - current.cooldownEnd >= 0) {
+                if (state.compareAndSet(current, new State(0, 0, bucket + 1))) {
+                    return 0;
+                }
+                continue;
+            }
+
+            if (threshold <= 0 || slowmodeSeconds(current.level) > MAX_SLOWMODE_SECONDS) {
+                return NO_CHANGE;
+            }
+
+            if (count(bucket, current.countFrom) < Math.max(1, threshold >> current.level)) {
+                return NO_CHANGE;
+            }
+
+            long cooldownEnd = (current.level == 0 ? now : current.cooldownEnd) + cooldownNanos;
+            State escalated = new State(current.level + 1, cooldownEnd, bucket + 1);
+
+            if (state.compareAndSet(current, escalated)) {
+                return slowmodeSeconds(escalated.level);
+            }
+        }
+    }
+
+    public int getSlowmodeSeconds() {
+        int level = state.get().level;
+        return level == 0 ? 0 : slowmodeSeconds(level);
+    }
+
+    public boolean isCoolingDown() {
+        return state.get().level > 0;
+    }
+
+    private static int slowmodeSeconds(int level) {
+        return BASE_SLOWMODE_SECONDS << level;
+    }
+
+    private void increment(long bucket) {
+        int index = (int) (bucket % BUCKETS);
+
+        while (true) {
+            long packed = buckets.get(index);
+            long updated = packed >>> COUNT_BITS == bucket
+                    ? packed + ((packed & COUNT_MASK) == COUNT_MASK ? 0 : 1)
+                    : bucket << COUNT_BITS | 1;
+
+            if (buckets.compareAndSet(index, packed, updated)) {
+                return;
+            }
+        }
+    }
+
+    private long count(long bucket, long countFrom) {
+        long oldest = Math.max(bucket - BUCKETS + 1, countFrom);
+        long total = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            long packed = buckets.get(i);
+            long slotBucket = packed >>> COUNT_BITS;
+
+            if (slotBucket >= oldest && slotBucket <= bucket) {
+                total += packed & COUNT_MASK;
+            }
+        }
+
+        return total;
+    }
+
+    private static final class State {
+        private final int level;
+        private final long cooldownEnd;
+        // messages in buckets before this one were counted towards an earlier escalation
+        private final long countFrom;
+
+        private State(int level, long cooldownEnd, long countFrom) {
+            this.level = level;
+            this.cooldownEnd = cooldownEnd;
+            this.countFrom = countFrom;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.miclesworkshop.halalbot;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import org.javacord.api.DiscordApi;
+import org.javacord.api.entity.channel.ServerTextChannel;
+import org.javacord.api.entity.server.Server;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds a {@link SlowmodeLimiter} only for channels that have been active recently. Limiters are keyed by the
+ * channel id rather than holding on to the channel, expire once the channel has been idle for a while and are
+ * capped in number, so a channel that stops talking costs nothing.
+ */
+public class SlowmodeRegistry {
+    private final DiscordApi discordApi;
+    private final Cache<Long, SlowmodeLimiter> limiters;
+
+    public SlowmodeRegistry(DiscordApi discordApi, ScheduledExecutorService scheduler, long idleTime, TimeUnit unit,
+                            long maxChannels) {
+        this.discordApi = discordApi;
+        this.limiters = CacheBuilder.newBuilder()
+                .expireAfterAccess(idleTime, unit)
+                .maximumSize(maxChannels)
+                .recordStats()
+                .removalListener(this::onRemoval)
+                .build();
+
+        // the cache only expires entries as a side effect of other accesses, so idle ones need a nudge
+        scheduler.scheduleWithFixedDelay(limiters::cleanUp, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public void recordActivity(ServerTextChannel channel, ServerData serverData) {
+        SlowmodeLimiter limiter;
+        try {
+            limiter = limiters.get(channel.getId(), () -> new SlowmodeLimiter(serverData.getSlowmodeThreshold(),
+                    serverData.getSlowmodeWindowSeconds(), serverData.getSlowmodeCooldownMinutes(), System::nanoTime));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+
+        int slowmodeSeconds = limiter.record();
+
+        if (slowmodeSeconds == 0) {
+            channel.unsetSlowmode();
+            channel.sendMessage("**Cooldown period ended!**");
+        } else if (slowmodeSeconds != SlowmodeLimiter.NO_CHANGE) {
+            channel.updateSlowmodeDelayInSeconds(slowmodeSeconds);
+            channel.sendMessage(String.format("**Cooldown set to %d seconds!**", slowmodeSeconds));
+        }
+    }
+
+    /**
+     * Drops the server's limiters so they are recreated with its current slowmode settings. Channels that are
+     * cooling down keep their limiter until the cooldown ends, otherwise their slowmode would never be lifted.
+     */
+    public void reset(Server server) {
+        limiters.asMap().entrySet().removeIf(entry -> !entry.getValue().isCoolingDown()
+                && server.getTextChannelById(entry.getKey()).isPresent());
+    }
+
+    public long size() {
+        return limiters.size();
+    }
+
+    public long getEvictionCount() {
+        return limiters.stats().evictionCount();
+    }
+
+    private void onRemoval(RemovalNotification<Long, SlowmodeLimiter> notification) {
+        SlowmodeLimiter limiter = notification.getValue();
+
+        // nobody is left talking to lift the slowmode on the next message, so lift it now
+        if (notification.wasEvicted() && limiter != null && limiter.isCoolingDown()) {
+            discordApi.getServerTextChannelById(notification.getKey()).ifPresent(ServerTextChannel::unsetSlowmode);
+        }
+    }
+}
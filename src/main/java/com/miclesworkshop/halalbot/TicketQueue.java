@@ -0,0 +1,165 @@
+package com.miclesworkshop.halalbot;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Applicants waiting for an approval channel while every approval category is full, in order of arrival per
+ * server. They are promoted one at a time as tickets close. The queue only lives in memory, so a restart empties
+ * it and the waiting applicants have to {@code *apply} again.
+ */
+public class TicketQueue {
+    private final LongSupplier nanoClock;
+
+    private final Map<Long, Deque<Waiting>> queues = new HashMap<>();
+
+    private long enqueuedCount;
+    private long promotedCount;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+
+    public TicketQueue(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Adds the applicant to the back of the server's queue, unless they are waiting already.
+     *
+     * @return the applicant's place in the queue, starting at 1
+     */
+    public synchronized int enqueue(long serverId, long userId) {
+        int position = getPosition(serverId, userId);
+
+        if (position != 0) {
+            return position;
+        }
+
+        Deque<Waiting> queue = queues.computeIfAbsent(serverId, id -> new ArrayDeque<>());
+        queue.addLast(new Waiting(userId, nanoClock.getAsLong()));
+        enqueuedCount++;
+
+        return queue.size();
+    }
+
+    /**
+     * Puts an applicant taken off the queue back at its front, for when they couldn't get a channel after all.
+     */
+    public synchronized void requeue(long serverId, Waiting waiting) {
+        queues.computeIfAbsent(serverId, id -> new ArrayDeque<>()).addFirst(waiting);
+    }
+
+    /**
+     * @return the applicant's place in the queue, starting at 1, or 0 if they aren't waiting
+     */
+    public synchronized int getPosition(long serverId, long userId) {
+        Deque<Waiting> queue = queues.get(serverId);
+
+        if (queue == null) {
+            return 0;
+        }
+
+        int position = 1;
+        for (Waiting waiting : queue) {
+            if (waiting.userId == userId) {
+                return position;
+            }
+            position++;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Takes the applicant that has waited longest off the server's queue.
+     */
+    public synchronized Optional<Waiting> poll(long serverId) {
+        Deque<Waiting> queue = queues.get(serverId);
+
+        if (queue == null) {
+            return Optional.empty();
+        }
+
+        Waiting waiting = queue.pollFirst();
+        if (queue.isEmpty()) {
+            queues.remove(serverId);
+        }
+
+        return Optional.ofNullable(waiting);
+    }
+
+    /**
+     * Records that an applicant taken off the queue got their channel.
+     */
+    public synchronized void promoted(Waiting waiting) {
+        long waitNanos = nanoClock.getAsLong() - waiting.since;
+
+        promotedCount++;
+        totalWaitNanos += waitNanos;
+        maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+    }
+
+    public synchronized boolean remove(long serverId, long userId) {
+        Deque<Waiting> queue = queues.get(serverId);
+
+        if (queue == null) {
+            return false;
+        }
+
+        for (Iterator<Waiting> iterator = queue.iterator(); iterator.hasNext(); ) {
+            if (iterator.next().userId == userId) {
+                iterator.remove();
+                if (queue.isEmpty()) {
+                    queues.remove(serverId);
+                }
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public synchronized int getWaitingCount(long serverId) {
+        Deque<Waiting> queue = queues.get(serverId);
+        return queue == null ? 0 : queue.size();
+    }
+
+    public synchronized int getWaitingCount() {
+        return queues.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    public synchronized long getEnqueuedCount() {
+        return enqueuedCount;
+    }
+
+    public synchronized long getPromotedCount() {
+        return promotedCount;
+    }
+
+    public synchronized double getAverageWaitSeconds() {
+        return promotedCount == 0 ? 0 : totalWaitNanos / (double) promotedCount / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    public synchronized long getMaxWaitSeconds() {
+        return TimeUnit.NANOSECONDS.toSeconds(maxWaitNanos);
+    }
+
+    public static final class Waiting {
+        private final long userId;
+        private final long since;
+
+        private Waiting(long userId, long since) {
+            this.userId = userId;
+            this.since = since;
+        }
+
+        public long getUserId() {
+            return userId;
+        }
+    }
+}
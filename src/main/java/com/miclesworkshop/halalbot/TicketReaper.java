@@ -0,0 +1,174 @@
+package com.miclesworkshop.halalbot;
+
+import com.miclesworkshop.halalbot.storage.TicketArchive;
+import org.javacord.api.entity.channel.ServerTextChannel;
+import org.javacord.api.entity.server.Server;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Closes approval tickets nobody has written in for longer than their server's ticket timeout. Activity is
+ * tracked per channel from message events; a channel the reaper hasn't seen a message in since the bot started
+ * counts from when it was first seen. Every sweep closes at most a small batch of tickets, stalest first, so a
+ * server full of abandoned tickets is cleaned up over a few minutes rather than in one burst of REST calls.
+ * <p>
+ * The applicant is told about the close once. A close that fails, for example because the transcript couldn't be
+ * posted, only has its channel deletion retried, a few times at most. A ticket counts as reaped once its channel
+ * is actually gone.
+ */
+public class TicketReaper {
+    // a close that hasn't removed the channel by then has failed, and is tried again
+    private static final long CLOSE_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    // after that many attempts the channel is left for a moderator to close
+    private static final int MAX_CLOSE_ATTEMPTS = 3;
+
+    private final Logger log = Logger.getLogger(getClass().getName());
+
+    private final HalalBot bot;
+    private final Clock clock;
+    private final int batchSize;
+
+    // channel id -> millis of the last message
+    private final Map<Long, Long> lastActivity = new ConcurrentHashMap<>();
+    // channel id -> the close in progress, so a close that is still going isn't started twice
+    private final Map<Long, Closing> closing = new ConcurrentHashMap<>();
+
+    private final AtomicLong reapedCount = new AtomicLong();
+
+    public TicketReaper(HalalBot bot, ScheduledExecutorService scheduler, Clock clock, int batchSize) {
+        this.bot = bot;
+        this.clock = clock;
+        this.batchSize = batchSize;
+
+        scheduler.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public void recordActivity(ServerTextChannel channel) {
+        lastActivity.put(channel.getId(), clock.millis());
+    }
+
+    /**
+     * Stops tracking a channel once it is gone, counting it as reaped if it was being closed for inactivity.
+     */
+    public void forget(long channelId) {
+        lastActivity.remove(channelId);
+
+        if (closing.remove(channelId) != null) {
+            reapedCount.incrementAndGet();
+        }
+    }
+
+    public int getTrackedCount() {
+        return lastActivity.size();
+    }
+
+    public long getReapedCount() {
+        return reapedCount.get();
+    }
+
+    private void sweep() {
+        try {
+            long now = clock.millis();
+            List<Stale> stale = new ArrayList<>();
+
+            for (Server server : bot.getDiscordApi().getServers()) {
+                int timeoutHours = bot.getServerData(server).getTicketTimeoutHours();
+
+                if (timeoutHours <= 0) {
+                    continue;
+                }
+
+                long cutoff = now - TimeUnit.HOURS.toMillis(timeoutHours);
+
+                for (long channelId : bot.getApprovalChannelIndex().getChannelIds(server)) {
+                    long last = lastActivity.computeIfAbsent(channelId, id -> now);
+
+                    Closing close = closing.get(channelId);
+
+                    if (last < cutoff && (close == null || close.isDue(now))) {
+                        stale.add(new Stale(server, channelId, last, timeoutHours));
+                    }
+                }
+            }
+
+            stale.sort(Comparator.comparingLong(ticket -> ticket.lastActivity));
+
+            for (Stale ticket : stale.subList(0, Math.min(batchSize, stale.size()))) {
+                Optional<ServerTextChannel> channel = ticket.server.getTextChannelById(ticket.channelId);
+
+                if (!channel.isPresent()) {
+                    forget(ticket.channelId);
+                    continue;
+                }
+
+                String reason = "No activity for " + ticket.timeoutHours + " hours";
+                Closing close = closing.get(ticket.channelId);
+
+                if (close == null) {
+                    closing.put(ticket.channelId, new Closing(now));
+
+                    log.info("Closing " + channel.get().getName() + " in " + ticket.server.getName() + ", inactive for "
+                            + TimeUnit.MILLISECONDS.toHours(now - ticket.lastActivity) + " hours");
+
+                    bot.closeApprovalChannel(channel.get(), reason, null);
+                } else {
+                    // the applicant was told already, only the deletion failed
+                    close.retry(now);
+
+                    log.warning("Retrying to close " + channel.get().getName() + " in " + ticket.server.getName()
+                            + ", attempt " + close.attempts + " of " + MAX_CLOSE_ATTEMPTS);
+
+                    bot.deleteChannel(channel.get(), "Approval channel closed automatically. Reason: '" + reason + "'",
+                            TicketArchive.Outcome.CLOSED, null);
+                }
+            }
+        } catch (RuntimeException e) {
+            // an exception would cancel the sweep for good
+            log.log(Level.WARNING, "Stale ticket sweep failed", e);
+        }
+    }
+
+    private static final class Closing {
+        private volatile long startedAt;
+        private volatile int attempts = 1;
+
+        private Closing(long startedAt) {
+            this.startedAt = startedAt;
+        }
+
+        private boolean isDue(long now) {
+            return attempts < MAX_CLOSE_ATTEMPTS && startedAt < now - CLOSE_RETRY_MILLIS;
+        }
+
+        // only called from the sweep
+        private void retry(long now) {
+            startedAt = now;
+            attempts++;
+        }
+    }
+
+    private static final class Stale {
+        private final Server server;
+        private final long channelId;
+        private final long lastActivity;
+        private final int timeoutHours;
+
+        private Stale(Server server, long channelId, long lastActivity, int timeoutHours) {
+            this.server = server;
+            this.channelId = channelId;
+            this.lastActivity = lastActivity;
+            this.timeoutHours = timeoutHours;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.miclesworkshop.halalbot;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import org.javacord.api.entity.message.Message;
+import org.javacord.api.entity.message.MessageAuthor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Records approval channels as their messages arrive, so closing a ticket doesn't have to page through the whole
+ * channel history first. Each channel gets a small append-only log of created, edited and deleted messages, which
+ * is folded into a readable transcript when the ticket is closed. Streams stay open only for channels that were
+ * written to recently.
+ * <p>
+ * Every record is framed by its length and a CRC32 of its bytes. A crash can still leave the last record half
+ * written, so the first time a log is opened after a start it is cut back to its last complete record before
+ * anything is appended, and reading stops at the first record that doesn't check out.
+ */
+public class TranscriptRecorder {
+    private static final byte CREATED = 'C';
+    private static final byte EDITED = 'E';
+    private static final byte DELETED = 'D';
+
+    // far more than the largest record, two UTF strings of at most 64 KiB each
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+
+    private final Logger log = Logger.getLogger(getClass().getName());
+
+    private final File folder;
+    private final Cache<Long, DataOutputStream> streams;
+    // channels whose log has been checked for a cut-off record since the start
+    private final Set<Long> repaired = new HashSet<>();
+
+    public TranscriptRecorder(File folder, ScheduledExecutorService scheduler, long idleTime, TimeUnit unit,
+                              long maxOpenFiles) {
+        this.folder = folder;
+        this.streams = CacheBuilder.newBuilder()
+                .expireAfterAccess(idleTime, unit)
+                .maximumSize(maxOpenFiles)
+                .removalListener(this::onRemoval)
+                .build();
+
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            log.warning("Couldn't create the transcripts folder " + folder);
+        }
+
+        // expiring a stream closes it, which mustn't happen halfway through a write
+        scheduler.scheduleWithFixedDelay(this::cleanUp, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public synchronized void recordCreate(long channelId, Message message) {
+        MessageAuthor author = message.getAuthor();
+
+        append(channelId, out -> {
+            out.writeByte(CREATED);
+            out.writeLong(message.getId());
+            out.writeLong(message.getCreationTimestamp().toEpochMilli());
+            out.writeUTF(author.getDisplayName() + " (" + author.getDiscriminatedName() + ")");
+            out.writeUTF(message.getReadableContent());
+        });
+    }
+
+    public synchronized void recordEdit(long channelId, long messageId, String newContent) {
+        append(channelId, out -> {
+            out.writeByte(EDITED);
+            out.writeLong(messageId);
+            out.writeUTF(newContent);
+        });
+    }
+
+    public synchronized void recordDelete(long channelId, long messageId) {
+        append(channelId, out -> {
+            out.writeByte(DELETED);
+            out.writeLong(messageId);
+        });
+    }
+
+    /**
+     * Writes out everything recorded for the channel, oldest message first, with edits applied. The log is read
+     * twice, once for the edits and deletions and once for the messages, so only the edits are held in memory.
+     *
+     * @return false if nothing was ever recorded for the channel
+     */
+    public synchronized boolean writeTranscript(long channelId, LineWriter writer) throws IOException {
+        streams.invalidate(channelId);
+
+        File file = getFile(channelId);
+        if (!file.isFile()) {
+            return false;
+        }
+
+        Map<Long, String> edits = new HashMap<>();
+        Set<Long> deleted = new HashSet<>();
+
+        read(file, (type, messageId, in) -> {
+            if (type == CREATED) {
+                in.readLong();
+                in.readUTF();
+                in.readUTF();
+            } else if (type == EDITED) {
+                edits.put(messageId, in.readUTF());
+            } else {
+                deleted.add(messageId);
+            }
+        });
+
+        read(file, (type, messageId, in) -> {
+            if (type == CREATED) {
+                long timestamp = in.readLong();
+                String author = in.readUTF();
+                String content = in.readUTF();
+
+                writer.writeLine("[" + Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()) + "] "
+                        + author + ": " + edits.getOrDefault(messageId, content)
+                        + (edits.containsKey(messageId) ? "(edited)" : "")
+                        + (deleted.contains(messageId) ? "(deleted)" : ""));
+            } else if (type == EDITED) {
+                in.readUTF();
+            }
+        });
+
+        return true;
+    }
+
+    /**
+     * Forgets the channel's recording, once its transcript has been dealt with or the channel is gone.
+     */
+    public synchronized void discard(long channelId) {
+        streams.invalidate(channelId);
+        repaired.remove(channelId);
+
+        File file = getFile(channelId);
+        if (file.exists() && !file.delete()) {
+            log.warning("Couldn't delete transcript " + file);
+        }
+    }
+
+    public long getOpenCount() {
+        return streams.size();
+    }
+
+    private synchronized void cleanUp() {
+        streams.cleanUp();
+    }
+
+    private void append(long channelId, Record record) {
+        try {
+            DataOutputStream out = streams.get(channelId, () -> open(channelId));
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            record.writeTo(new DataOutputStream(bytes));
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+
+            out.writeInt(bytes.size());
+            out.writeInt((int) crc.getValue());
+            bytes.writeTo(out);
+            out.flush();
+        } catch (ExecutionException | IOException e) {
+            log.log(Level.WARNING, "Couldn't record a message in channel " + channelId, e);
+        }
+    }
+
+    private DataOutputStream open(long channelId) throws IOException {
+        File file = getFile(channelId);
+
+        // appending after a cut-off record would put every later record out of step
+        if (repaired.add(channelId) && file.isFile()) {
+            long valid = read(file, (type, messageId, in) -> {
+            });
+
+            if (valid < file.length()) {
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(valid);
+                }
+            }
+        }
+
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+    }
+
+    private File getFile(long channelId) {
+        return new File(folder, channelId + ".log");
+    }
+
+    private void onRemoval(RemovalNotification<Long, DataOutputStream> notification) {
+        try {
+            if (notification.getValue() != null) {
+                notification.getValue().close();
+            }
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Couldn't close transcript of channel " + notification.getKey(), e);
+        }
+    }
+
+    /**
+     * Reads the log's records up to the end or the first one that is cut short or damaged, whichever comes first.
+     *
+     * @return the length of the log up to the end of the last complete record
+     */
+    private long read(File file, RecordReader reader) throws IOException {
+        long valid = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+
+                if (length < 9 || length > MAX_RECORD_BYTES) {
+                    break;
+                }
+
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+                byte type = record.readByte();
+
+                if (type != CREATED && type != EDITED && type != DELETED) {
+                    break;
+                }
+
+                reader.read(type, record.readLong(), record);
+                valid += 8 + length;
+            }
+        } catch (EOFException e) {
+            // end of the log, or a record cut short by a crash which is as good as never written
+        }
+
+        if (valid < file.length()) {
+            log.warning("Transcript " + file + " ends in a damaged record after " + valid + " bytes");
+        }
+
+        return valid;
+    }
+
+    public interface LineWriter {
+        void writeLine(String line) throws IOException;
+    }
+
+    private interface Record {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    private interface RecordReader {
+        void read(byte type, long messageId, DataInputStream in) throws IOException;
+    }
+}
@@ -0,0 +1,192 @@
+package com.miclesworkshop.halalbot;
+
+import org.javacord.api.entity.channel.TextChannel;
+import org.javacord.api.entity.message.MessageBuilder;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Turns a transcript into messages for the logs channel line by line, as it is read. Short transcripts are sent as
+ * code blocks split at Discord's message limit; once one would take more than a few messages, all of it goes into
+ * a gzipped text attachment instead. Either way no more than a few messages' worth of text is held in memory.
+ */
+public class TranscriptWriter implements TranscriptRecorder.LineWriter, Closeable {
+    private static final int MESSAGE_LIMIT = 2000;
+    private static final int HEADER_LIMIT = 500;
+
+    private static final String FENCE_OPEN = "```Log\n";
+    private static final String FENCE_CLOSE = "\n```";
+    private static final String FENCE = "```";
+    // a zero width space keeps backticks in a message from closing the code block early
+    private static final String ESCAPED_FENCE = "``\u200b`";
+
+    private final Logger log = Logger.getLogger(getClass().getName());
+
+    private final String header;
+    private final String name;
+    private final int maxMessages;
+
+    private final List<String> chunks = new ArrayList<>();
+    private final StringBuilder chunk = new StringBuilder();
+    private int lineCount;
+
+    private File attachment;
+    private Writer attachmentWriter;
+
+    /**
+     * @param header      text sent before the transcript, cut short if it is long
+     * @param name        the attachment's name, without extension
+     * @param maxMessages how many messages the transcript may take before it is sent as an attachment instead
+     */
+    public TranscriptWriter(String header, String name, int maxMessages) {
+        this.header = header.length() > HEADER_LIMIT ? header.substring(0, HEADER_LIMIT) + "..." : header;
+        this.name = name;
+        this.maxMessages = Math.max(1, maxMessages);
+    }
+
+    @Override
+    public void writeLine(String line) throws IOException {
+        lineCount++;
+
+        if (attachmentWriter != null) {
+            attachmentWriter.write(line);
+            attachmentWriter.write('\n');
+            return;
+        }
+
+        String remaining = line.replace(FENCE, ESCAPED_FENCE);
+        boolean continued = false;
+
+        while (true) {
+            int room = getCapacity() - chunk.length() - (chunk.length() > 0 ? 1 : 0);
+
+            if (remaining.length() <= room) {
+                if (chunk.length() > 0) {
+                    chunk.append('\n');
+                }
+                chunk.append(remaining);
+                return;
+            }
+
+            if (chunk.length() == 0) {
+                // longer than a whole message, so it has to be split, but never between a surrogate pair
+                int split = Character.isHighSurrogate(remaining.charAt(room - 1)) ? room - 1 : room;
+                chunk.append(remaining, 0, split);
+                remaining = remaining.substring(split);
+                continued = true;
+            }
+
+            if (chunks.size() + 1 >= maxMessages) {
+                switchToAttachment();
+                if (!continued) {
+                    attachmentWriter.write('\n');
+                }
+                attachmentWriter.write(unescape(remaining));
+                attachmentWriter.write('\n');
+                return;
+            }
+
+            chunks.add(chunk.toString());
+            chunk.setLength(0);
+        }
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Sends everything written so far, in order. The writer is closed afterwards, whether or not sending worked.
+     *
+     * @return a future completing once every message has been accepted by Discord
+     */
+    public CompletableFuture<Void> send(TextChannel channel) {
+        CompletableFuture<?> sent;
+
+        if (attachmentWriter != null) {
+            try {
+                attachmentWriter.close();
+            } catch (IOException e) {
+                close();
+                CompletableFuture<Void> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+
+            sent = new MessageBuilder()
+                    .append(header + "\n" + lineCount + " lines, attached as `" + attachment.getName() + "`")
+                    .addAttachment(attachment)
+                    .send(channel);
+        } else {
+            chunks.add(chunk.toString());
+            chunk.setLength(0);
+
+            // one at a time, so the parts can't arrive out of order
+            sent = CompletableFuture.completedFuture(null);
+            for (int i = 0; i < chunks.size(); i++) {
+                String text = (i == 0 ? header + "\n" : "") + FENCE_OPEN + chunks.get(i) + FENCE_CLOSE;
+                sent = sent.thenCompose(previous -> channel.sendMessage(text));
+            }
+            chunks.clear();
+        }
+
+        return sent.whenComplete((result, throwable) -> close()).thenApply(result -> null);
+    }
+
+    @Override
+    public void close() {
+        chunks.clear();
+        chunk.setLength(0);
+
+        if (attachment == null) {
+            return;
+        }
+
+        try {
+            attachmentWriter.close();
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Couldn't close transcript attachment " + attachment, e);
+        }
+
+        if (attachment.exists() && !attachment.delete()) {
+            log.warning("Couldn't delete transcript attachment " + attachment);
+        }
+    }
+
+    private int getCapacity() {
+        int capacity = MESSAGE_LIMIT - FENCE_OPEN.length() - FENCE_CLOSE.length();
+        return chunks.isEmpty() ? capacity - header.length() - 1 : capacity;
+    }
+
+    private void switchToAttachment() throws IOException {
+        attachment = File.createTempFile(name + "-", ".txt.gz");
+        attachmentWriter = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(attachment)), StandardCharsets.UTF_8));
+
+        for (String written : chunks) {
+            attachmentWriter.write(unescape(written));
+            attachmentWriter.write('\n');
+        }
+        attachmentWriter.write(unescape(chunk.toString()));
+
+        chunks.clear();
+        chunk.setLength(0);
+    }
+
+    private static String unescape(String text) {
+        return text.replace(ESCAPED_FENCE, FENCE);
+    }
+}
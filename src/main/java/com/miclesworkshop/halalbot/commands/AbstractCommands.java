@@ -1,40 +1,47 @@
 package com.miclesworkshop.halalbot.commands;
 
+import com.miclesworkshop.halalbot.ActionScheduler;
 import com.miclesworkshop.halalbot.HalalBot;
 import org.javacord.api.entity.channel.ServerTextChannel;
+import org.javacord.api.entity.channel.TextChannel;
 import org.javacord.api.entity.message.Message;
 import org.javacord.api.entity.server.Server;
 import org.javacord.api.entity.user.User;
 
-import java.util.logging.Logger;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 public abstract class AbstractCommands {
-    private Logger log = Logger.getLogger(AbstractCommands.class.getName());
-
     protected HalalBot bot;
 
-    AbstractCommands(HalalBot bot) {
+    private final String[] commandNames;
+
+    AbstractCommands(HalalBot bot, String... commandNames) {
         this.bot = bot;
+        this.commandNames = commandNames;
     }
 
-    public void parseMessage(Server server, User user, ServerTextChannel channel, Message message) {
-        String content = message.getContent();
-
-        if (!content.startsWith("*")) {
-            return;
-        }
-
-        String[] split = content.split(" ");
+    /**
+     * @return the lowercase command names, including the prefix, that are routed to this group
+     */
+    public String[] getCommandNames() {
+        return commandNames.clone();
+    }
 
-        String channelName = channel.getName();
-        String[] args = new String[split.length - 1];
+    /**
+     * Queues a REST call on the bot's {@link ActionScheduler}.
+     */
+    protected <T> CompletableFuture<T> schedule(ActionScheduler.Priority priority, String route,
+                                                Supplier<CompletableFuture<T>> action) {
+        return bot.getActionScheduler().submit(priority, route, action);
+    }
 
-        if (args.length >= 0) {
-            System.arraycopy(split, 1, args, 0, args.length);
-        }
+    protected CompletableFuture<Message> send(ActionScheduler.Priority priority, TextChannel channel, String content) {
+        return schedule(priority, ActionScheduler.messages(channel), () -> channel.sendMessage(content));
+    }
 
-        String cmd = split[0].toLowerCase();
-        executeCommand(server, user, channel, message, channelName, cmd, args);
+    protected CompletableFuture<Message> sendDirect(ActionScheduler.Priority priority, User user, String content) {
+        return schedule(priority, ActionScheduler.directMessages(user), () -> user.sendMessage(content));
     }
 
     protected abstract void executeCommand(Server server, User user, ServerTextChannel channel, Message message,
@@ -1,7 +1,12 @@
 package com.miclesworkshop.halalbot.commands;
 
+import com.google.common.collect.ImmutableSet;
+import com.miclesworkshop.halalbot.ActionScheduler;
+import com.miclesworkshop.halalbot.BotExecutor;
 import com.miclesworkshop.halalbot.HalalBot;
 import com.miclesworkshop.halalbot.ServerData;
+import com.miclesworkshop.halalbot.storage.ServerDataChange;
+import com.miclesworkshop.halalbot.storage.TicketArchive;
 import org.javacord.api.entity.channel.ServerTextChannel;
 import org.javacord.api.entity.channel.TextChannel;
 import org.javacord.api.entity.message.Message;
@@ -11,32 +16,183 @@ import org.javacord.api.entity.server.Server;
 import org.javacord.api.entity.user.User;
 
 import java.util.Arrays;
-import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import static com.miclesworkshop.halalbot.ActionScheduler.Priority.APPROVAL;
+import static com.miclesworkshop.halalbot.ActionScheduler.Priority.MODERATION;
+import static com.miclesworkshop.halalbot.ActionScheduler.Priority.NOTICE;
+
 public class ApprovalCommands extends AbstractCommands {
+    private static final Set<String> MODERATOR_COMMANDS = ImmutableSet.of(
+            "*approve", "*vc", "*fr", "*all", "*qns", "*qnd", "*wvc", "*ban", "*close");
+
     private Logger log = Logger.getLogger(getClass().getName());
 
     public ApprovalCommands(HalalBot halalBot) {
-        super(halalBot);
+        super(halalBot, "*approve", "*vc", "*fr", "*all", "*qns", "*qnd", "*wvc", "*ban", "*apply", "*close",
+                "*addmod", "*removemod", "*listroles", "*addrole", "*removerole");
     }
 
     @Override
     protected void executeCommand(Server server, User user, ServerTextChannel channel, Message message,
                                   String channelName, String cmd, String[] args) {
+        if (MODERATOR_COMMANDS.contains(cmd)) {
+            if (isNotModerator(server, channel, user)) {
+                return;
+            }
+
+            if (!ensureApprovalChannel(channel)) {
+                return;
+            }
+
+            executeModeratorCommand(server, user, channel, message, channelName, cmd, args);
+            return;
+        }
+
         switch (cmd) {
-            case "*approve": {
-                if (isNotModerator(server, channel, user)) {
+            case "*apply": {
+                bot.getOrCreateLimboChannel(server).thenCompose(limboChannel -> {
+                    if (channel.getId() != limboChannel.getId()) {
+                        channel.sendMessage("This can only be done in " + limboChannel.getMentionTag());
+                        return CompletableFuture.completedFuture(null);
+                    }
+
+                    return bot.createApprovalChannelIfAbsent(server, user);
+                }).exceptionally(BotExecutor::logFailure);
+                break;
+            }
+            case "*addmod":
+            case "*removemod": {
+                if (missingRolePermission(server, user, channel)) {
+                    return;
+                }
+
+                if (missingMentionedUser(channel, message)) {
+                    return;
+                }
+
+                bot.getApprovalModeratorRole(server).thenAccept(approvalModeratorRole -> {
+                    for (User newMod : message.getMentionedUsers()) {
+                        if (cmd.equals("*addmod")) {
+                            if (approvalModeratorRole.hasUser(newMod)) {
+                                channel.sendMessage(newMod.getName() + " is already an approval moderator!");
+                                continue;
+                            }
+
+                            schedule(APPROVAL, ActionScheduler.roles(server), () -> server.addRoleToUser(newMod, approvalModeratorRole));
+                            sendDirect(NOTICE, newMod, "You've been made an approval moderator by " + user.getName() + " in " + server.getName() + "!");
+                            send(NOTICE, channel, "Made " + newMod.getName() + " an approval moderator.");
+
+                            log.info(user.getName() + " made " + newMod.getName() + " an approval moderator in " + server.getName());
+                        } else {
+                            if (!approvalModeratorRole.hasUser(newMod)) {
+                                channel.sendMessage(newMod.getName() + " isn't an approval moderator!");
+                                continue;
+                            }
+
+                            schedule(APPROVAL, ActionScheduler.roles(server), () -> server.removeRoleFromUser(newMod, approvalModeratorRole));
+                            sendDirect(NOTICE, newMod, "You've been removed as an approval moderator by " + user.getName() + " in " + server.getName() + "!");
+                            send(NOTICE, channel, "Made " + newMod.getName() + " not approval moderator.");
+
+                            log.info(user.getName() + " made " + newMod.getName() + " no longer an approval moderator in " + server.getName());
+                        }
+                    }
+                }).exceptionally(BotExecutor::logFailure);
+
+                break;
+            }
+            case "*listroles": {
+                if (missingRolePermission(server, user, channel)) {
+                    return;
+                }
+
+                ServerData serverData = bot.getServerData(server);
+
+                Map<String, Long> roles = serverData.getRoles();
+                String rolesString = roles.isEmpty() ? "None" : roles.entrySet().stream()
+                        .map(p -> p.getKey() + ": " + p.getValue())
+                        .collect(Collectors.joining("\n"));
+
+                channel.sendMessage("**Current Roles (Role Name to Role ID) (Use *addrole to add roles)**\n" + rolesString);
+
+                break;
+            }
+            case "*addrole": {
+                if (missingRolePermission(server, user, channel)) {
+                    return;
+                }
+
+                if (args.length < 2) {
+                    channel.sendMessage("Usage: *addrole <key> <actual role name>");
+                    return;
+                }
+
+                String key = args[0].toLowerCase();
+
+                String roleName = "";
+
+                for (int i = 1; i < args.length; i++) {
+                    roleName += args[i];
+                    if (i != args.length - 1) {
+                        roleName += " ";
+                    }
+                }
+
+                Optional<Role> optionalRole = server.getRolesByNameIgnoreCase(roleName).stream().findFirst();
+
+                if (!optionalRole.isPresent()) {
+                    channel.sendMessage("Role " + roleName + " not found!");
+                    return;
+                }
+
+                Role role = optionalRole.get();
+
+                bot.updateServerData(server, ServerDataChange.roleAdded(key, role.getId()));
+
+                channel.sendMessage("Success! Made role " + role.getName() + " mapped to " + key + ".\n" +
+                        "You can now do `*approve " + key + "` to approve someone into this role.");
+
+                log.info(user.getName() + " registered role " + role.getName() + " as " + key);
+                break;
+            }
+            case "*removerole": {
+                if (missingRolePermission(server, user, channel)) {
                     return;
                 }
 
-                if (!ensureApprovalChannel(channel)) {
+                if (args.length != 1) {
+                    channel.sendMessage("Usage: *removerole <key>");
                     return;
                 }
 
+                String key = args[0].toLowerCase();
+
+                ServerData serverData = bot.getServerData(server);
+
+                if (!serverData.getRoles().containsKey(key)) {
+                    channel.sendMessage("Role " + key + " not found! Use *listroles for a list.");
+                    return;
+                }
+
+                bot.updateServerData(server, ServerDataChange.roleRemoved(key));
+
+                channel.sendMessage("Success! Unregistered role " + key + ".");
+
+                log.info(user.getName() + " removed role with key " + key);
+                break;
+            }
+        }
+    }
+
+    private void executeModeratorCommand(Server server, User user, ServerTextChannel channel, Message message,
+                                         String channelName, String cmd, String[] args) {
+        switch (cmd) {
+            case "*approve": {
                 if (args.length != 1) {
                     channel.sendMessage("Usage: *approve <role key>");
                     return;
@@ -64,19 +220,21 @@ public class ApprovalCommands extends AbstractCommands {
 
                 bot.getDiscordApi().getUserById(channelName.replaceFirst("approval-", "")).thenAccept(approvedUser -> {
                     // remove all old roles
-                    server.getRoles(approvedUser).forEach(oldRole -> server.removeRoleFromUser(approvedUser, oldRole));
+                    server.getRoles(approvedUser).forEach(oldRole -> schedule(APPROVAL, ActionScheduler.roles(server),
+                            () -> server.removeRoleFromUser(approvedUser, oldRole)));
 
                     // add new role
-                    server.addRoleToUser(approvedUser, role);
+                    schedule(APPROVAL, ActionScheduler.roles(server), () -> server.addRoleToUser(approvedUser, role));
 
                     // deleted channel
-                    bot.deleteChannel(channel, approvedUser.getName() + " was approved by " + approvedUser.getName() + ".");
+                    bot.deleteChannel(channel, approvedUser.getName() + " was approved by " + approvedUser.getName() + ".",
+                            TicketArchive.Outcome.APPROVED, user);
 
                     // inform the person who was approved
-                    approvedUser.sendMessage("You were approved in " + server.getName() + " as a " + role.getName() + "!");
+                    sendDirect(NOTICE, approvedUser, "You were approved in " + server.getName() + " as a " + role.getName() + "!");
 
                     // inform the person who approved them
-                    user.sendMessage("Approved user " + approvedUser.getName() + " as a " + role.getName());
+                    sendDirect(NOTICE, user, "Approved user " + approvedUser.getName() + " as a " + role.getName());
 
                     log.info(user.getName() + " approved " + approvedUser.getName() + " as a " + role.getName());
                 });
@@ -84,20 +242,12 @@ public class ApprovalCommands extends AbstractCommands {
                 break;
             }
             case "*vc": {
-                if (isNotModerator(server, channel, user)) {
-                    return;
-                }
-
-                if (!ensureApprovalChannel(channel)) {
-                    return;
-                }
-
-                message.delete();
+                schedule(NOTICE, ActionScheduler.messages(channel), message::delete);
 
                 String id = channelName.replaceFirst("approval-", "");
 
                 bot.getDiscordApi().getUserById(id).thenAccept(approvedUser ->
-                        channel.sendMessage(approvedUser.getMentionTag()
+                        send(NOTICE, channel, approvedUser.getMentionTag()
                                 + " please join Approval-Voice!")
                 );
 
@@ -105,84 +255,44 @@ public class ApprovalCommands extends AbstractCommands {
             }
 
             case "*fr":{
-                if (this.isNotModerator(server, channel, user)) {
-                    return;
-                }
-
-                if (!this.ensureApprovalChannel(channel)) {
-                    return;
-                }
-
-                message.delete();
+                schedule(NOTICE, ActionScheduler.messages(channel), message::delete);
                 String id = channelName.replaceFirst("approval-", "");
                 this.bot.getDiscordApi().getUserById(id).thenAccept((approvedUser) -> {
-                    channel.sendMessage(approvedUser.getMentionTag() + " please type the Discord name of the person who invited you in the Name#1234 format.");
+                    send(NOTICE, channel, approvedUser.getMentionTag() + " please type the Discord name of the person who invited you in the Name#1234 format.");
                 });
                 break;
         }
             case "*all":{
-                if (this.isNotModerator(server, channel, user)) {
-                    return;
-                }
-
-                if (!this.ensureApprovalChannel(channel)) {
-                    return;
-                }
-
-                message.delete();
+                schedule(NOTICE, ActionScheduler.messages(channel), message::delete);
                 String id = channelName.replaceFirst("approval-", "");
                 this.bot.getDiscordApi().getUserById(id).thenAccept((approvedUser) -> {
-                    channel.sendMessage(approvedUser.getMentionTag() + " please answer every question, dont skip any.");
+                    send(NOTICE, channel, approvedUser.getMentionTag() + " please answer every question, dont skip any.");
                 });
                 break;
         }
             case "*qns": {
-                if (this.isNotModerator(server, channel, user)) {
-                    return;
-                }
-
-                if (!this.ensureApprovalChannel(channel)) {
-                    return;
-                }
-
-                message.delete();
+                schedule(NOTICE, ActionScheduler.messages(channel), message::delete);
                 String id = channelName.replaceFirst("approval-", "");
                 this.bot.getDiscordApi().getUserById(id).thenAccept((approvedUser) -> {
-                    channel.sendMessage(approvedUser.getMentionTag() + " Answer the following:\n 1. What madhab do you follow?\n 2. What does a person need to believe in to be a Muslim?\n 3. What do you say 3 times when your head touches the floor in prayer?\n 4. A person worships Allah and a small statue, he prays 5 times a day and gives charity, is he a good Muslim?\n 5. Who is the current caliph? \nPing Approval Moderator or " + user.getMentionTag() + " after answering the questions \n");
+                    send(NOTICE, channel, approvedUser.getMentionTag() + " Answer the following:\n 1. What madhab do you follow?\n 2. What does a person need to believe in to be a Muslim?\n 3. What do you say 3 times when your head touches the floor in prayer?\n 4. A person worships Allah and a small statue, he prays 5 times a day and gives charity, is he a good Muslim?\n 5. Who is the current caliph? \nPing Approval Moderator or " + user.getMentionTag() + " after answering the questions \n");
                 });
                 break;
             }
             case "*qnd": {
-                if (this.isNotModerator(server, channel, user)) {
-                    return;
-                }
-
-                if (!this.ensureApprovalChannel(channel)) {
-                    return;
-                }
-
-                message.delete();
+                schedule(NOTICE, ActionScheduler.messages(channel), message::delete);
                 String id = channelName.replaceFirst("approval-", "");
                 this.bot.getDiscordApi().getUserById(id).thenAccept((approvedUser) -> {
-                    channel.sendMessage(approvedUser.getMentionTag() + " Answer all of the questions honestly and as best you can, your approval depends on it:\n 1. Explain briefly your religious beliefs.\n -Does it affirm a creator and what is this creator's nature?\n -What are your beliefs on an afterlife/after-death?\n -What is the purpose of life?\n 2. Why is spirituality important?\n 3. What is morality and where is it derived from?\n 4. Is Islam an evil religion, followed by evil people? Why or why not?\n 5. Are Muslims people who can be trusted? Why or why not?\n 6. What are your main information sources on Islam?\n 7. Do you think the actions of Muslims are representative of what Islam calls to?\n 8. What do you currently know about Islam?\n -What is the main Islamic doctrine?\n -What is the purpose of life?\n -What are the main differences that you know of between Islam and other religions?\n 9. How much contact do you have with Muslims in your daily life?\n -Are there many Muslims in your country?\n -Do you have Muslim friends?\n 10. Are you certain of your religious beliefs?\n -Do you believe Islam is flawed?\n -Do you want to prove it is?\nPing Approval Moderator or " + user.getMentionTag() + " after answering the questions \n");
+                    send(NOTICE, channel, approvedUser.getMentionTag() + " Answer all of the questions honestly and as best you can, your approval depends on it:\n 1. Explain briefly your religious beliefs.\n -Does it affirm a creator and what is this creator's nature?\n -What are your beliefs on an afterlife/after-death?\n -What is the purpose of life?\n 2. Why is spirituality important?\n 3. What is morality and where is it derived from?\n 4. Is Islam an evil religion, followed by evil people? Why or why not?\n 5. Are Muslims people who can be trusted? Why or why not?\n 6. What are your main information sources on Islam?\n 7. Do you think the actions of Muslims are representative of what Islam calls to?\n 8. What do you currently know about Islam?\n -What is the main Islamic doctrine?\n -What is the purpose of life?\n -What are the main differences that you know of between Islam and other religions?\n 9. How much contact do you have with Muslims in your daily life?\n -Are there many Muslims in your country?\n -Do you have Muslim friends?\n 10. Are you certain of your religious beliefs?\n -Do you believe Islam is flawed?\n -Do you want to prove it is?\nPing Approval Moderator or " + user.getMentionTag() + " after answering the questions \n");
                 });
                 break;
             }
             case "*wvc": {
-                if (isNotModerator(server, channel, user)) {
-                    return;
-                }
-
-                if (!ensureApprovalChannel(channel)) {
-                    return;
-                }
-
-                message.delete();
+                schedule(NOTICE, ActionScheduler.messages(channel), message::delete);
 
                 String id = channelName.replaceFirst("approval-", "");
 
                 bot.getDiscordApi().getUserById(id).thenAccept(approvedUser ->
-                        channel.sendMessage(approvedUser.getMentionTag()
+                        send(NOTICE, channel, approvedUser.getMentionTag()
                                 + " this is an Islamic server with thousands of members," +
                                 " many of whom are young young. Unfortunately, we have been victims of raids" +
                                 " from malicious users who come here and send abusive messages." +
@@ -192,14 +302,6 @@ public class ApprovalCommands extends AbstractCommands {
             }
 
             case "*ban": {
-                if (isNotModerator(server, channel, user)) {
-                    return;
-                }
-
-                if (!ensureApprovalChannel(channel)) {
-                    return;
-                }
-
                 if (args.length == 0) {
                     channel.sendMessage("Reason required! Usage: `*ban <reason>`");
                     return;
@@ -210,42 +312,24 @@ public class ApprovalCommands extends AbstractCommands {
                 bot.getDiscordApi().getUserById(channelName.replaceFirst("approval-", "")).thenAccept(bannedUser -> {
                     // remove the channel
                     bot.deleteChannel(channel, bannedUser.getName() + " was denied & banned by " + bannedUser.getName() + ". " +
-                            "Reason: " + reason);
-
-                    // inform the banned user
-                    bannedUser.sendMessage("You were banned from " + server.getName() + ". Reason: " + reason);
+                            "Reason: " + reason, TicketArchive.Outcome.BANNED, user);
 
-                    // ban user from the server (do it after sending the private message in case it's necessary)
-                    server.banUser(bannedUser);
+                    // inform the banned user, then ban them from the server (once the private message is through, because
+                    // Discord won't deliver it afterwards), even if the message couldn't be delivered
+                    sendDirect(MODERATION, bannedUser, "You were banned from " + server.getName() + ". Reason: " + reason)
+                            .handle((sent, throwable) -> null)
+                            .thenCompose(ignored -> schedule(MODERATION, ActionScheduler.bans(server), () -> server.banUser(bannedUser)))
+                            .exceptionally(BotExecutor::logFailure);
 
                     // inform the one who banned them
-                    user.sendMessage("Banned user " + bannedUser.getName() + " & deleted their channel.");
+                    sendDirect(NOTICE, user, "Banned user " + bannedUser.getName() + " & deleted their channel.");
 
                     log.info(user.getName() + " banned " + bannedUser.getName() + " for " + reason);
                 });
 
                 return;
             }
-            case "*apply": {
-                ServerTextChannel limboChannel = bot.getOrCreateLimboChannel(server);
-
-                if (channel.getId() != limboChannel.getId()) {
-                    channel.sendMessage("This can only be done in " + limboChannel.getMentionTag());
-                    return;
-                }
-
-                bot.createApprovalChannelIfAbsent(server, user);
-                break;
-            }
             case "*close": {
-                if (isNotModerator(server, channel, user)) {
-                    return;
-                }
-
-                if (!ensureApprovalChannel(channel)) {
-                    return;
-                }
-
                 if (args.length == 0) {
                     channel.sendMessage("Reason required! Usage: `*close <reason>`");
                     return;
@@ -256,129 +340,6 @@ public class ApprovalCommands extends AbstractCommands {
                 bot.closeApprovalChannel(channel, reason, user);
                 break;
             }
-            case "*addmod":
-            case "*removemod": {
-                if (missingRolePermission(server, user, channel)) {
-                    return;
-                }
-
-                if (missingMentionedUser(channel, message)) {
-                    return;
-                }
-
-                Role approvalModeratorRole = bot.getApprovalModeratorRole(server);
-
-                for (User newMod : message.getMentionedUsers()) {
-                    if (cmd.equals("*addmod")) {
-                        if (server.getRoles(newMod).contains(approvalModeratorRole)) {
-                            channel.sendMessage(newMod.getName() + " is already an approval moderator!");
-                            continue;
-                        }
-
-                        server.addRoleToUser(newMod, approvalModeratorRole);
-                        newMod.sendMessage("You've been made an approval moderator by " + user.getName() + " in " + server.getName() + "!");
-                        channel.sendMessage("Made " + newMod.getName() + " an approval moderator.");
-
-                        log.info(user.getName() + " made " + newMod.getName() + " an approval moderator in " + server.getName());
-                    } else {
-                        if (!server.getRoles(newMod).contains(approvalModeratorRole)) {
-                            channel.sendMessage(newMod.getName() + " isn't an approval moderator!");
-                            continue;
-                        }
-
-                        server.removeRoleFromUser(newMod, approvalModeratorRole);
-                        newMod.sendMessage("You've been removed as an approval moderator by " + user.getName() + " in " + server.getName() + "!");
-                        channel.sendMessage("Made " + newMod.getName() + " not approval moderator.");
-
-                        log.info(user.getName() + " made " + newMod.getName() + " no longer an approval moderator in " + server.getName());
-                    }
-                }
-
-                break;
-            }
-            case "*listroles": {
-                if (missingRolePermission(server, user, channel)) {
-                    return;
-                }
-
-                ServerData serverData = bot.getServerData(server);
-
-                Map<String, Long> roles = serverData.getRoles();
-                String rolesString = roles.isEmpty() ? "None" : roles.entrySet().stream()
-                        .map(p -> p.getKey() + ": " + p.getValue())
-                        .collect(Collectors.joining("\n"));
-
-                channel.sendMessage("**Current Roles (Role Name to Role ID) (Use *addrole to add roles)**\n" + rolesString);
-
-                break;
-            }
-            case "*addrole": {
-                if (missingRolePermission(server, user, channel)) {
-                    return;
-                }
-
-                if (args.length < 2) {
-                    channel.sendMessage("Usage: *addrole <key> <actual role name>");
-                    return;
-                }
-
-                String key = args[0].toLowerCase();
-
-                String roleName = "";
-
-                for (int i = 1; i < args.length; i++) {
-                    roleName += args[i];
-                    if (i != args.length - 1) {
-                        roleName += " ";
-                    }
-                }
-
-                Optional<Role> optionalRole = server.getRolesByNameIgnoreCase(roleName).stream().findFirst();
-
-                if (!optionalRole.isPresent()) {
-                    channel.sendMessage("Role " + roleName + " not found!");
-                    return;
-                }
-
-                Role role = optionalRole.get();
-
-                ServerData serverData = bot.getServerData(server);
-                serverData.getRoles().put(key, role.getId());
-                bot.saveData();
-
-                channel.sendMessage("Success! Made role " + role.getName() + " mapped to " + key + ".\n" +
-                        "You can now do `*approve " + key + "` to approve someone into this role.");
-
-                log.info(user.getName() + " registered role " + role.getName() + " as " + key);
-                break;
-            }
-            case "*removerole": {
-                if (missingRolePermission(server, user, channel)) {
-                    return;
-                }
-
-                if (args.length != 1) {
-                    channel.sendMessage("Usage: *removerole <key>");
-                    return;
-                }
-
-                String key = args[0].toLowerCase();
-
-                ServerData serverData = bot.getServerData(server);
-
-                if (!serverData.getRoles().containsKey(key)) {
-                    channel.sendMessage("Role " + key + " not found! Use *listroles for a list.");
-                    return;
-                }
-
-                serverData.getRoles().remove(key);
-                bot.saveData();
-
-                channel.sendMessage("Success! Unregistered role " + key + ".");
-
-                log.info(user.getName() + " removed role with key " + key);
-                break;
-            }
         }
     }
 
@@ -399,11 +360,7 @@ public class ApprovalCommands extends AbstractCommands {
     }
 
     private boolean isNotModerator(Server server, TextChannel channel, User user) {
-        Role approvalModeratorRole = bot.getApprovalModeratorRole(server);
-
-        List<Role> roles = user.getRoles(server);
-
-        if (!roles.contains(approvalModeratorRole)) {
+        if (!bot.getRoleCache().isModerator(server, user)) {
             channel.sendMessage(user.getMentionTag() + " you aren't an approval moderator!");
             return true;
         }
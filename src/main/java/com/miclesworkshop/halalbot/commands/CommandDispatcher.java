@@ -0,0 +1,95 @@
+package com.miclesworkshop.halalbot.commands;
+
+import com.google.common.base.Preconditions;
+import org.javacord.api.entity.channel.ServerTextChannel;
+import org.javacord.api.entity.user.User;
+import org.javacord.api.event.message.MessageCreateEvent;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+public class CommandDispatcher {
+    private static final char PREFIX = '*';
+    private static final String[] NO_ARGS = new String[0];
+
+    private final Map<String, AbstractCommands> handlers = new HashMap<>();
+    private final Executor executor;
+
+    public CommandDispatcher(List<AbstractCommands> commandGroups, Executor executor) {
+        this.executor = executor;
+
+        for (AbstractCommands group : commandGroups) {
+            for (String name : group.getCommandNames()) {
+                AbstractCommands previous = handlers.put(name, group);
+                Preconditions.checkState(previous == null, "Command %s is registered by both %s and %s",
+                        name, previous, group);
+            }
+        }
+    }
+
+    public void dispatch(MessageCreateEvent event) {
+        String content = event.getMessageContent();
+
+        if (content.isEmpty() || content.charAt(0) != PREFIX) {
+            return;
+        }
+
+        int commandEnd = content.indexOf(' ');
+        String cmd = (commandEnd == -1 ? content : content.substring(0, commandEnd)).toLowerCase();
+
+        AbstractCommands handler = handlers.get(cmd);
+
+        if (handler == null) {
+            return;
+        }
+
+        Optional<ServerTextChannel> channel = event.getServerTextChannel();
+        Optional<User> user = event.getMessageAuthor().asUser();
+
+        if (!channel.isPresent() || !user.isPresent()) {
+            return;
+        }
+
+        String[] args = commandEnd == -1 ? NO_ARGS : splitArgs(content, commandEnd + 1);
+
+        // handlers may wait on Discord, so keep them off the listener thread
+        executor.execute(() -> handler.executeCommand(channel.get().getServer(), user.get(), channel.get(),
+                event.getMessage(), channel.get().getName(), cmd, args));
+    }
+
+    // splits on single spaces without going through the regex engine, skipping empty tokens
+    static String[] splitArgs(String content, int start) {
+        int length = content.length();
+        int count = 0;
+
+        for (int i = start; i < length; i++) {
+            if (content.charAt(i) != ' ' && (i == start || content.charAt(i - 1) == ' ')) {
+                count++;
+            }
+        }
+
+        if (count == 0) {
+            return NO_ARGS;
+        }
+
+        String[] args = new String[count];
+        int index = 0;
+        int tokenStart = -1;
+
+        for (int i = start; i <= length; i++) {
+            boolean separator = i == length || content.charAt(i) == ' ';
+
+            if (separator && tokenStart != -1) {
+                args[index++] = content.substring(tokenStart, i);
+                tokenStart = -1;
+            } else if (!separator && tokenStart == -1) {
+                tokenStart = i;
+            }
+        }
+
+        return args;
+    }
+}
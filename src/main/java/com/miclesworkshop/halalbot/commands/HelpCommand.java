@@ -8,16 +8,12 @@ import org.javacord.api.entity.user.User;
 
 public class HelpCommand extends AbstractCommands {
     public HelpCommand(HalalBot bot) {
-        super(bot);
+        super(bot, "*help");
     }
 
     @Override
     protected void executeCommand(Server server, User user, ServerTextChannel channel, Message message,
                                   String channelName, String cmd, String[] args) {
-        if (!cmd.equalsIgnoreCase("*help")) {
-            return;
-        }
-
         message.delete();
 
         user.sendMessage("Commands:\n" +
@@ -38,9 +34,25 @@ public class HelpCommand extends AbstractCommands {
                 "`*fr` **:::** Asks the applicant of the person who invited them to the server.\n" +
                 "`*qns` **:::** Questions for Muslim applicants.\n" +
                 "`*qnd` **:::** Questions for Non-Muslim applicants \n" +
+                "`*history [user] [approved|banned|closed] [mod:user] [since:date] [until:date]` **:::** Search closed tickets.\n" +
+                "`*history transcript [ticket]` **:::** Sends an archived ticket's transcript.\n" +
                 "\n" +
                 "__***Jail***__\n" +
                 "`*pc [user(s)]` **:::** Send the given user(s) to private channel.\n" +
-                "`*upc [user(s)]` **:::** Remove the given user(s) from private channel.");
+                "`*upc [user(s)]` **:::** Remove the given user(s) from private channel.\n" +
+                "\n" +
+                "__***Quran***__\n" +
+                "`*quran [surah] [ayah] [last ayah] [-t translation]` **:::** Shows the given ayah(s) in Arabic and translated.\n" +
+                "`*aquran` / `*equran` **:::** Same as `*quran`, but only in Arabic / only translated.\n" +
+                "`*qsearch [words]` **:::** Finds ayahs by words in English or Arabic. Quote words to search for a phrase.\n" +
+                "\n" +
+                "__***Settings***__\n" +
+                "`*slowmode [messages] [window seconds] [cooldown minutes]` **:::** Configure automatic slowmode.\n" +
+                "`*translation [id]` **:::** Choose the translation `*quran` shows by default.\n" +
+                "`*dailyayah [HH:MM UTC | off]` **:::** Post an ayah of the day in this channel.\n" +
+                "`*tickettimeout [hours | off]` **:::** Close approval tickets left without messages this long.\n" +
+                "\n" +
+                "__***Bot***__\n" +
+                "`*stats` **:::** Shows the bot's internal queue and cache statistics.");
     }
 }
@@ -0,0 +1,159 @@
+package com.miclesworkshop.halalbot.commands;
+
+import com.miclesworkshop.halalbot.BotExecutor;
+import com.miclesworkshop.halalbot.HalalBot;
+import com.miclesworkshop.halalbot.storage.TicketArchive;
+import org.javacord.api.entity.channel.ServerTextChannel;
+import org.javacord.api.entity.message.Message;
+import org.javacord.api.entity.message.MessageBuilder;
+import org.javacord.api.entity.server.Server;
+import org.javacord.api.entity.user.User;
+
+import java.io.File;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+public class HistoryCommand extends AbstractCommands {
+    private static final int RESULTS = 10;
+    private static final int REASON_LENGTH = 80;
+    private static final int MESSAGE_BUDGET = 1900;
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
+            .withZone(ZoneOffset.UTC);
+
+    public HistoryCommand(HalalBot bot) {
+        super(bot, "*history");
+    }
+
+    @Override
+    protected void executeCommand(Server server, User user, ServerTextChannel channel, Message message,
+                                  String channelName, String cmd, String[] args) {
+        if (!bot.getRoleCache().isModerator(server, user)) {
+            channel.sendMessage(user.getMentionTag() + " you aren't an approval moderator!");
+            return;
+        }
+
+        if (args.length == 2 && args[0].equalsIgnoreCase("transcript")) {
+            sendTranscript(server, channel, args[1]);
+        } else {
+            sendHistory(server, channel, args);
+        }
+    }
+
+    private void sendHistory(Server server, ServerTextChannel channel, String[] args) {
+        TicketArchive.Query query = new TicketArchive.Query();
+
+        for (String arg : args) {
+            String lower = arg.toLowerCase(Locale.ROOT);
+
+            try {
+                if (lower.startsWith("mod:")) {
+                    long moderatorId = parseUserId(arg.substring(4));
+                    if (moderatorId == 0) {
+                        sendUsage(channel);
+                        return;
+                    }
+                    query.moderator(moderatorId);
+                } else if (lower.startsWith("since:")) {
+                    query.since(LocalDate.parse(arg.substring(6)).atStartOfDay(ZoneOffset.UTC).toInstant());
+                } else if (lower.startsWith("until:")) {
+                    // inclusive, so up to the start of the next day
+                    query.until(LocalDate.parse(arg.substring(6)).plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant());
+                } else if (lower.equals("approved") || lower.equals("banned") || lower.equals("closed")) {
+                    query.outcome(TicketArchive.Outcome.valueOf(lower.toUpperCase(Locale.ROOT)));
+                } else if (parseUserId(arg) != 0) {
+                    query.user(parseUserId(arg));
+                } else {
+                    sendUsage(channel);
+                    return;
+                }
+            } catch (DateTimeParseException e) {
+                channel.sendMessage("Dates look like `2024-01-31`.");
+                return;
+            }
+        }
+
+        List<TicketArchive.Ticket> tickets = bot.getTicketArchive().find(server.getId(), query, RESULTS);
+
+        if (tickets.isEmpty()) {
+            channel.sendMessage("No archived tickets found.");
+            return;
+        }
+
+        StringBuilder history = new StringBuilder("__**Archived tickets**__ (most recent first)\n");
+
+        for (TicketArchive.Ticket ticket : tickets) {
+            String reason = ticket.getReason().replace("`", "");
+            if (reason.length() > REASON_LENGTH) {
+                reason = reason.substring(0, REASON_LENGTH) + "...";
+            }
+
+            // names rather than mentions, so looking someone up doesn't ping them
+            String line = "\n`" + DATE_FORMAT.format(Instant.ofEpochMilli(ticket.getClosedAt())) + "` **"
+                    + ticket.getOutcome() + "** " + describe(ticket.getUserId())
+                    + (ticket.getModeratorId() == 0 ? "" : " by " + describe(ticket.getModeratorId()))
+                    + " (ticket `" + ticket.getTicketId() + "`)\n> " + reason;
+
+            if (history.length() + line.length() > MESSAGE_BUDGET) {
+                break;
+            }
+
+            history.append(line);
+        }
+
+        history.append("\n\nUse `*history transcript <ticket>` for a ticket's transcript.");
+
+        channel.sendMessage(history.toString());
+    }
+
+    private void sendTranscript(Server server, ServerTextChannel channel, String ticket) {
+        long ticketId;
+        try {
+            ticketId = Long.parseLong(ticket);
+        } catch (NumberFormatException e) {
+            sendUsage(channel);
+            return;
+        }
+
+        Optional<File> transcript = bot.getTicketArchive().getTranscript(server.getId(), ticketId);
+
+        if (!transcript.isPresent()) {
+            channel.sendMessage("Ticket `" + ticketId + "` isn't in the archive.");
+            return;
+        }
+
+        new MessageBuilder()
+                .append("Transcript of ticket `" + ticketId + "`")
+                .addAttachment(transcript.get())
+                .send(channel)
+                .exceptionally(BotExecutor::logFailure);
+    }
+
+    private String describe(long userId) {
+        return bot.getDiscordApi().getCachedUserById(userId)
+                .map(cached -> cached.getDiscriminatedName() + " (`" + userId + "`)")
+                .orElse("`" + userId + "`");
+    }
+
+    // a raw id or a mention, 0 if it is neither
+    private static long parseUserId(String arg) {
+        String id = arg.replaceAll("^<@!?(\\d+)>$", "$1");
+
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void sendUsage(ServerTextChannel channel) {
+        channel.sendMessage("__**Usage:**__ *history [user] [approved|banned|closed] [mod:user] "
+                + "[since:YYYY-MM-DD] [until:YYYY-MM-DD] OR *history transcript <ticket>");
+    }
+}
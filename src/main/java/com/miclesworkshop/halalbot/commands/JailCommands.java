@@ -1,5 +1,7 @@
 package com.miclesworkshop.halalbot.commands;
 
+import com.miclesworkshop.halalbot.ActionScheduler;
+import com.miclesworkshop.halalbot.BotExecutor;
 import com.miclesworkshop.halalbot.HalalBot;
 import org.javacord.api.entity.channel.ServerTextChannel;
 import org.javacord.api.entity.message.Message;
@@ -7,18 +9,17 @@ import org.javacord.api.entity.permission.PermissionType;
 import org.javacord.api.entity.server.Server;
 import org.javacord.api.entity.user.User;
 
+import static com.miclesworkshop.halalbot.ActionScheduler.Priority.MODERATION;
+import static com.miclesworkshop.halalbot.ActionScheduler.Priority.NOTICE;
+
 public class JailCommands extends AbstractCommands {
     public JailCommands(HalalBot bot) {
-        super(bot);
+        super(bot, "*pc", "*upc");
     }
 
     @Override
     protected void executeCommand(Server server, User user, ServerTextChannel channel, Message message,
                                   String channelName, String cmd, String[] args) {
-        if (!cmd.equals("*pc") && !cmd.equals("*upc")) {
-            return;
-        }
-
         boolean jail = cmd.equals("*pc");
 
         if (!server.hasPermission(user, PermissionType.KICK_MEMBERS)) {
@@ -30,34 +31,34 @@ public class JailCommands extends AbstractCommands {
             channel.sendMessage("Usage: " + cmd + " <user(s)>");
         }
 
-        for (User target : message.getMentionedUsers()) {
-            if (jail && server.hasPermission(target, PermissionType.KICK_MEMBERS)) {
-                channel.sendMessage("Can't place in Private Channel" + target.getDiscriminatedName());
-                continue;
-            }
+        bot.getJailedRole(server).thenAccept(jailedRole -> {
+            for (User target : message.getMentionedUsers()) {
+                if (jail && server.hasPermission(target, PermissionType.KICK_MEMBERS)) {
+                    channel.sendMessage("Can't place in Private Channel" + target.getDiscriminatedName());
+                    continue;
+                }
+
+                if (jailedRole.hasUser(target) == jail) {
+                    if (jail) {
+                        channel.sendMessage(target.getDiscriminatedName() + " is already in private channel!");
+                    } else {
+                        channel.sendMessage(target.getDiscriminatedName() + " is not in private channel!");
+                    }
+                    continue;
+                }
 
-            if (isJailed(target, server) == jail) {
                 if (jail) {
-                    channel.sendMessage(target.getDiscriminatedName() + " is already in private channel!");
+                    schedule(MODERATION, ActionScheduler.roles(server),
+                            () -> target.addRole(jailedRole, "Put in Private Channel by " + user.getDiscriminatedName()));
+                    sendDirect(NOTICE, target, "You have been placed in Private Channel in" + server.getName() + "!");
+                    send(NOTICE, channel, "Placed in Private Channel " + target.getDiscriminatedName());
                 } else {
-                    channel.sendMessage(target.getDiscriminatedName() + " is not in private channel!");
+                    schedule(MODERATION, ActionScheduler.roles(server),
+                            () -> target.removeRole(jailedRole, "Unjailed by " + user.getDiscriminatedName()));
+                    sendDirect(NOTICE, target, "You have been removed from Private Channel in " + server.getName() + "!");
+                    send(NOTICE, channel, "Removed from Private Channel " + target.getDiscriminatedName());
                 }
-                continue;
-            }
-
-            if (jail) {
-                target.addRole(bot.getJailedRole(server), "Put in Private Channel by " + user.getDiscriminatedName());
-                target.sendMessage("You have been placed in Private Channel in" + server.getName() + "!");
-                channel.sendMessage("Placed in Private Channel " + target.getDiscriminatedName());
-            } else {
-                target.removeRole(bot.getJailedRole(server), "Unjailed by " + user.getDiscriminatedName());
-                target.sendMessage("You have been removed from Private Channel in " + server.getName() + "!");
-                channel.sendMessage("Removed from Private Channel " + target.getDiscriminatedName());
             }
-        }
-    }
-
-    private boolean isJailed(User user, Server server) {
-        return server.getRoles(user).contains(bot.getJailedRole(server));
+        }).exceptionally(BotExecutor::logFailure);
     }
 }
@@ -1,39 +1,88 @@
 package com.miclesworkshop.halalbot.commands;
 
 import com.miclesworkshop.halalbot.HalalBot;
+import com.miclesworkshop.halalbot.quran.QuranCorpus;
+import com.miclesworkshop.halalbot.quran.QuranCorpusRegistry;
+import com.miclesworkshop.halalbot.quran.QuranIndex;
+import com.miclesworkshop.halalbot.quran.QuranLibrary;
+import com.miclesworkshop.halalbot.quran.QuranRenderer;
+import com.miclesworkshop.halalbot.quran.Translation;
 import org.javacord.api.entity.channel.ServerTextChannel;
 import org.javacord.api.entity.message.Message;
-import org.javacord.api.entity.message.embed.EmbedBuilder;
 import org.javacord.api.entity.server.Server;
 import org.javacord.api.entity.user.User;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 public class QuranCommands extends AbstractCommands {
-    private String[][][] data; // first dimension: surah index. second dimension: ayah index. third dimension: arabic/english
+    private Logger log = Logger.getLogger(getClass().getName());
+
+    private static final int SEARCH_RESULTS = 5;
+    private static final int SNIPPET_LENGTH = 200;
 
     public QuranCommands(HalalBot bot) {
-        super(bot);
-        try (ObjectInputStream ois = new ObjectInputStream(QuranCommands.class.getResourceAsStream("/halalbot_quran_data.bin"))) {
-            data = (String[][][]) ois.readObject();
-        } catch (IOException | ClassNotFoundException e) {
-            e.printStackTrace();
-        }
+        super(bot, "*quran", "*equran", "*aquran", "*qsearch");
     }
 
     @Override
     protected void executeCommand(Server server, User user, ServerTextChannel channel, Message message, String channelName, String cmd, String[] args) {
-        if (!cmd.equals("*quran") && !cmd.equals("*equran") && !cmd.equals("*aquran")) {
+        QuranLibrary library = bot.getQuranLibrary();
+
+        if (!library.isAvailable()) {
+            channel.sendMessage("The Quran text is unavailable right now.");
             return;
         }
 
+        QuranCorpus corpus = library.getCorpus();
+
+        if (cmd.equals("*qsearch")) {
+            search(library, channel, args);
+            return;
+        }
+
+        // "-t <id>" picks a translation for this command only
+        QuranCorpusRegistry registry = library.getRegistry();
+        Translation translation = registry.find(bot.getServerData(server).getQuranTranslation())
+                .orElse(registry.getDefault());
+        List<String> positional = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].equals("-t") || i + 1 == args.length) {
+                positional.add(args[i]);
+                continue;
+            }
+
+            Optional<Translation> requested = registry.find(args[++i]);
+            if (!requested.isPresent()) {
+                channel.sendMessage("Unknown translation `" + args[i].replace("`", "") + "`. Available: "
+                        + registry.getTranslations().stream().map(Translation::getId).collect(Collectors.joining(", ")));
+                return;
+            }
+
+            translation = requested.get();
+        }
+
+        args = positional.toArray(new String[0]);
+
         if (args.length < 2) {
             sendUsage(channel, cmd);
             return;
         }
 
+        try {
+            registry.get(translation);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Couldn't load translation " + translation.getId(), e);
+            channel.sendMessage("The " + translation.getName() + " translation is unavailable right now.");
+            return;
+        }
+
         int surahNum;
         int ayah1Num;
         int ayah2Num;
@@ -47,13 +96,11 @@ public class QuranCommands extends AbstractCommands {
             return;
         }
 
-        if (surahNum < 1 || surahNum > data.length) {
+        if (surahNum < 1 || surahNum > corpus.getSurahCount()) {
             channel.sendMessage("Surah #" + surahNum + " not found");
             return;
         }
 
-        String[][] surahData = data[surahNum - 1];
-
         if (ayah2Num < ayah1Num) {
             channel.sendMessage("Second ayah can't be less than first ayah.");
             return;
@@ -64,46 +111,56 @@ public class QuranCommands extends AbstractCommands {
             return;
         }
 
-        int ayahCount = surahData.length;
+        int ayahCount = corpus.getAyahCount(surahNum);
         if (ayah2Num > ayahCount) {
             channel.sendMessage("Surah only has " + ayahCount + " ayahs");
             return;
         }
 
-        String[][] range = Arrays.copyOfRange(surahData, ayah1Num - 1, ayah2Num);
-
-        EmbedBuilder embedBuilder = new EmbedBuilder();
-
-        for (int i = 0; i < range.length; i++) {
-            String index = surahNum + ":" + (ayah1Num + i);
-            StringBuilder contentBuilder = new StringBuilder();
-
-            String[] ayahData = range[i];
-            switch (cmd) {
-                case "*quran":
-                    contentBuilder.append(ayahData[0] + "\n");
-                    contentBuilder.append(ayahData[1]);
-                    break;
-                case "*aquran":
-                    contentBuilder.append(ayahData[0]);
-                    break;
-                case "*equran":
-                    contentBuilder.append(ayahData[1]);
-                    break;
-            }
-            contentBuilder.append("\n\n");
-            String content = contentBuilder.toString();
-            embedBuilder.addField(index, content);
+        QuranRenderer.Mode mode = cmd.equals("*aquran") ? QuranRenderer.Mode.ARABIC
+                : cmd.equals("*equran") ? QuranRenderer.Mode.TRANSLATION
+                : QuranRenderer.Mode.BOTH;
+
+        bot.getQuranPager().show(channel, user, mode, translation, surahNum, ayah1Num, ayah2Num);
+    }
+
+    private void search(QuranLibrary library, ServerTextChannel channel, String[] args) {
+        String query = String.join(" ", args);
+        List<QuranIndex.Hit> hits = library.getIndex().search(query, SEARCH_RESULTS);
+
+        // echoed back in the reply, so keep it short enough for the results to fit in one message
+        String shownQuery = query.replace("`", "");
+        if (shownQuery.length() > 100) {
+            shownQuery = shownQuery.substring(0, 100) + "...";
         }
 
-        if (!cmd.equals("*aquran")) {
-            embedBuilder.addField("Translation", "Mufti Taqi Usmani");
+        if (hits.isEmpty()) {
+            channel.sendMessage(args.length == 0
+                    ? "__**Usage:**__ *qsearch words OR *qsearch \"a phrase\""
+                    : "No ayahs found for `" + shownQuery + "`");
+            return;
+        }
+
+        StringBuilder results = new StringBuilder("__**Results for**__ `" + shownQuery + "`\n");
+
+        for (QuranIndex.Hit hit : hits) {
+            String text = library.getCorpus().getText(hit.getSurah(), hit.getAyah(), QuranCorpus.Text.TRANSLATION);
+
+            if (text.length() > SNIPPET_LENGTH) {
+                int cut = text.lastIndexOf(' ', SNIPPET_LENGTH);
+                text = text.substring(0, cut > 0 ? cut : SNIPPET_LENGTH) + "...";
+            }
+
+            results.append("\n**").append(hit.getSurah()).append(':').append(hit.getAyah()).append("** ")
+                    .append(text).append('\n');
         }
 
-        channel.sendMessage(embedBuilder);
+        results.append("\nUse `*quran surah ayah` to read the full ayah.");
+
+        channel.sendMessage(results.toString());
     }
 
     private void sendUsage(ServerTextChannel channel, String cmd) {
-        channel.sendMessage("__**Usage:**__ " + cmd + " surah ayah OR " + " surah ayah1 ayah2");
+        channel.sendMessage("__**Usage:**__ " + cmd + " surah ayah OR " + " surah ayah1 ayah2, optionally with -t translation");
     }
 }
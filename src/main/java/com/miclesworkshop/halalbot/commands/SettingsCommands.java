@@ -0,0 +1,204 @@
+package com.miclesworkshop.halalbot.commands;
+
+import com.miclesworkshop.halalbot.HalalBot;
+import com.miclesworkshop.halalbot.ServerData;
+import com.miclesworkshop.halalbot.quran.QuranCorpusRegistry;
+import com.miclesworkshop.halalbot.quran.QuranLibrary;
+import com.miclesworkshop.halalbot.quran.Translation;
+import com.miclesworkshop.halalbot.storage.ServerDataChange;
+import org.javacord.api.entity.channel.ServerTextChannel;
+import org.javacord.api.entity.message.Message;
+import org.javacord.api.entity.permission.PermissionType;
+import org.javacord.api.entity.server.Server;
+import org.javacord.api.entity.user.User;
+
+import java.util.Optional;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+public class SettingsCommands extends AbstractCommands {
+    private Logger log = Logger.getLogger(getClass().getName());
+
+    public SettingsCommands(HalalBot bot) {
+        super(bot, "*slowmode", "*translation", "*dailyayah", "*tickettimeout");
+    }
+
+    @Override
+    protected void executeCommand(Server server, User user, ServerTextChannel channel, Message message,
+                                  String channelName, String cmd, String[] args) {
+        if (!server.hasPermission(user, PermissionType.MANAGE_SERVER)) {
+            channel.sendMessage(user.getMentionTag() + " You don't have the MANAGE_SERVER permission!");
+            return;
+        }
+
+        switch (cmd) {
+            case "*slowmode": {
+                ServerData serverData = bot.getServerData(server);
+
+                if (args.length == 0) {
+                    channel.sendMessage("Automatic slowmode starts after " + serverData.getSlowmodeThreshold()
+                            + " messages in " + serverData.getSlowmodeWindowSeconds() + " seconds, and each step lasts "
+                            + serverData.getSlowmodeCooldownMinutes() + " minutes.\n"
+                            + "Usage: `*slowmode <messages> [window seconds] [cooldown minutes]` (0 messages disables it)");
+                    return;
+                }
+
+                int threshold;
+                int windowSeconds;
+                int cooldownMinutes;
+
+                try {
+                    threshold = Integer.parseInt(args[0]);
+                    windowSeconds = args.length > 1 ? Integer.parseInt(args[1]) : serverData.getSlowmodeWindowSeconds();
+                    cooldownMinutes = args.length > 2 ? Integer.parseInt(args[2]) : serverData.getSlowmodeCooldownMinutes();
+                } catch (NumberFormatException e) {
+                    channel.sendMessage("Usage: `*slowmode <messages> [window seconds] [cooldown minutes]`");
+                    return;
+                }
+
+                if (threshold < 0 || windowSeconds < 1 || cooldownMinutes < 1) {
+                    channel.sendMessage("Messages can't be negative, and the window and cooldown must be at least 1.");
+                    return;
+                }
+
+                bot.updateServerData(server, ServerDataChange.slowmodeThreshold(threshold));
+                bot.updateServerData(server, ServerDataChange.slowmodeWindow(windowSeconds));
+                bot.updateServerData(server, ServerDataChange.slowmodeCooldown(cooldownMinutes));
+                bot.getSlowmodeRegistry().reset(server);
+
+                channel.sendMessage(threshold == 0 ? "Automatic slowmode disabled." : "Automatic slowmode now starts after "
+                        + threshold + " messages in " + windowSeconds + " seconds, with " + cooldownMinutes + " minute steps.");
+
+                log.info(user.getName() + " set slowmode in " + server.getName() + " to " + threshold + "/"
+                        + windowSeconds + "s/" + cooldownMinutes + "m");
+                break;
+            }
+            case "*translation": {
+                QuranLibrary quran = bot.getQuranLibrary();
+
+                if (!quran.isAvailable()) {
+                    channel.sendMessage("The Quran text is unavailable right now.");
+                    return;
+                }
+
+                QuranCorpusRegistry registry = quran.getRegistry();
+                Translation current = registry.find(bot.getServerData(server).getQuranTranslation())
+                        .orElse(registry.getDefault());
+
+                if (args.length == 0) {
+                    channel.sendMessage("`*quran` shows the " + current.getName() + " translation here.\nAvailable: "
+                            + registry.getTranslations().stream()
+                            .map(translation -> "`" + translation.getId() + "` (" + translation.getName() + ")")
+                            .collect(Collectors.joining(", "))
+                            + "\nUsage: `*translation <id>`");
+                    return;
+                }
+
+                Optional<Translation> translation = registry.find(args[0]);
+
+                if (!translation.isPresent()) {
+                    channel.sendMessage("Unknown translation `" + args[0].replace("`", "") + "`. Use `*translation` for a list.");
+                    return;
+                }
+
+                bot.updateServerData(server, ServerDataChange.quranTranslation(translation.get().getId()));
+
+                channel.sendMessage("`*quran` now shows the " + translation.get().getName() + " translation.");
+
+                log.info(user.getName() + " set the Quran translation in " + server.getName() + " to "
+                        + translation.get().getId());
+                break;
+            }
+            case "*dailyayah": {
+                ServerData serverData = bot.getServerData(server);
+
+                if (args.length == 0) {
+                    channel.sendMessage((serverData.getDailyAyahChannel() == 0 ? "The daily ayah is off."
+                            : "The daily ayah is posted in <#" + serverData.getDailyAyahChannel() + "> at "
+                            + formatMinute(serverData.getDailyAyahMinute()) + " UTC.")
+                            + "\nUsage: `*dailyayah <HH:MM UTC>` in the channel to post in, or `*dailyayah off`");
+                    return;
+                }
+
+                if (args[0].equalsIgnoreCase("off")) {
+                    bot.updateServerData(server, ServerDataChange.dailyAyahChannel(0));
+                    bot.getAyahScheduler().update(server);
+                    channel.sendMessage("The daily ayah is off.");
+                    return;
+                }
+
+                int minute = parseMinute(args[0]);
+
+                if (minute == -1) {
+                    channel.sendMessage("Usage: `*dailyayah <HH:MM UTC>`, for example `*dailyayah 05:30`");
+                    return;
+                }
+
+                bot.updateServerData(server, ServerDataChange.dailyAyahMinute(minute));
+                bot.updateServerData(server, ServerDataChange.dailyAyahChannel(channel.getId()));
+                bot.getAyahScheduler().update(server);
+
+                channel.sendMessage("The daily ayah will be posted here at " + formatMinute(minute) + " UTC.");
+
+                log.info(user.getName() + " set the daily ayah in " + server.getName() + " to #" + channel.getName()
+                        + " at " + formatMinute(minute));
+                break;
+            }
+            case "*tickettimeout": {
+                if (args.length == 0) {
+                    int hours = bot.getServerData(server).getTicketTimeoutHours();
+                    channel.sendMessage((hours == 0 ? "Approval tickets are never closed for inactivity."
+                            : "Approval tickets are closed after " + hours + " hours without messages.")
+                            + "\nUsage: `*tickettimeout <hours>` or `*tickettimeout off`");
+                    return;
+                }
+
+                int hours;
+
+                if (args[0].equalsIgnoreCase("off")) {
+                    hours = 0;
+                } else {
+                    try {
+                        hours = Integer.parseInt(args[0]);
+                    } catch (NumberFormatException e) {
+                        hours = -1;
+                    }
+
+                    if (hours < 1) {
+                        channel.sendMessage("Usage: `*tickettimeout <hours>` (at least 1) or `*tickettimeout off`");
+                        return;
+                    }
+                }
+
+                bot.updateServerData(server, ServerDataChange.ticketTimeout(hours));
+
+                channel.sendMessage(hours == 0 ? "Approval tickets will no longer be closed for inactivity."
+                        : "Approval tickets will be closed after " + hours + " hours without messages.");
+
+                log.info(user.getName() + " set the ticket timeout in " + server.getName() + " to " + hours + "h");
+                break;
+            }
+        }
+    }
+
+    // HH:MM to minutes since midnight, or -1 if it isn't a valid time
+    private static int parseMinute(String time) {
+        String[] parts = time.split(":");
+
+        if (parts.length != 2) {
+            return -1;
+        }
+
+        try {
+            int hours = Integer.parseInt(parts[0]);
+            int minutes = Integer.parseInt(parts[1]);
+            return hours < 0 || hours > 23 || minutes < 0 || minutes > 59 ? -1 : hours * 60 + minutes;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String formatMinute(int minute) {
+        return String.format("%02d:%02d", minute / 60, minute % 60);
+    }
+}
@@ -0,0 +1,112 @@
+package com.miclesworkshop.halalbot.commands;
+
+import com.google.common.cache.CacheStats;
+import com.miclesworkshop.halalbot.ActionScheduler;
+import com.miclesworkshop.halalbot.BotExecutor;
+import com.miclesworkshop.halalbot.HalalBot;
+import com.miclesworkshop.halalbot.MessageCoalescer;
+import com.miclesworkshop.halalbot.RoleCache;
+import com.miclesworkshop.halalbot.SlowmodeRegistry;
+import com.miclesworkshop.halalbot.TicketQueue;
+import com.miclesworkshop.halalbot.quran.QuranLibrary;
+import com.miclesworkshop.halalbot.storage.JournalServerDataRepository;
+import com.miclesworkshop.halalbot.storage.ServerDataRepository;
+import org.javacord.api.entity.channel.ServerTextChannel;
+import org.javacord.api.entity.message.Message;
+import org.javacord.api.entity.permission.PermissionType;
+import org.javacord.api.entity.server.Server;
+import org.javacord.api.entity.user.User;
+
+public class StatsCommand extends AbstractCommands {
+    public StatsCommand(HalalBot bot) {
+        super(bot, "*stats");
+    }
+
+    @Override
+    protected void executeCommand(Server server, User user, ServerTextChannel channel, Message message,
+                                  String channelName, String cmd, String[] args) {
+        if (!server.hasPermission(user, PermissionType.MANAGE_ROLES)) {
+            channel.sendMessage(user.getMentionTag() + " You don't have the MANAGE_ROLES permission!");
+            return;
+        }
+
+        BotExecutor executor = bot.getExecutor();
+        ServerDataRepository repository = bot.getServerDataRepository();
+
+        StringBuilder stats = new StringBuilder("**Bot Stats**\n");
+
+        stats.append("Async executor: ").append(executor.getQueueDepth()).append(" queued, ")
+                .append(executor.getActiveCount()).append("/").append(executor.getMaximumPoolSize()).append(" busy, ")
+                .append(executor.getCompletedTaskCount()).append(" completed")
+                .append(executor.isUsingVirtualThreads() ? " (virtual threads)" : "").append("\n");
+
+        stats.append("Server data: ").append(repository.size()).append(" servers");
+
+        if (repository instanceof JournalServerDataRepository) {
+            JournalServerDataRepository journal = (JournalServerDataRepository) repository;
+            stats.append(", ").append(journal.getPendingCount()).append(" unsaved changes, ")
+                    .append(journal.getJournalEntries()).append(" journal entries (")
+                    .append(journal.getJournalBytes()).append(" bytes), ")
+                    .append(journal.getCompactions()).append(" compactions");
+        }
+
+        stats.append("\n");
+
+        SlowmodeRegistry slowmodeRegistry = bot.getSlowmodeRegistry();
+        stats.append("Slowmode limiters: ").append(slowmodeRegistry.size()).append(" active channels, ")
+                .append(slowmodeRegistry.getEvictionCount()).append(" evicted\n");
+
+        stats.append("Raid lockdown: ").append(bot.getRaidProtection().isLockedDown(server) ? "active" : "inactive")
+                .append(" here, ").append(bot.getRaidProtection().getLockedDownCount()).append(" servers in total\n");
+
+        ActionScheduler actions = bot.getActionScheduler();
+        stats.append("REST queue: ").append(actions.getQueuedCount()).append(" queued, ")
+                .append(actions.getInFlightCount()).append(" in flight");
+        for (ActionScheduler.Priority priority : ActionScheduler.Priority.values()) {
+            stats.append(String.format(", %s %d sent (avg wait %.0f ms, max %d ms)", priority.name().toLowerCase(),
+                    actions.getStartedCount(priority), actions.getAverageQueueMillis(priority),
+                    actions.getMaxQueueMillis(priority)));
+        }
+        stats.append("\n");
+
+        QuranLibrary quran = bot.getQuranLibrary();
+        if (quran.isAvailable()) {
+            CacheStats renderStats = quran.getRenderer().getStats();
+            stats.append(String.format("Quran render cache: %d pages, %d hits, %d misses (%.0f%% hit rate)\n",
+                    quran.getRenderer().size(), renderStats.hitCount(), renderStats.missCount(),
+                    renderStats.hitRate() * 100));
+            stats.append("Quran page sessions: ").append(bot.getQuranPager().getSessionCount()).append(" open\n");
+            stats.append("Daily ayah: ").append(bot.getAyahScheduler().getScheduledCount()).append(" servers scheduled\n");
+            stats.append("Quran translations: ").append(quran.getRegistry().getLoadedCount()).append(" of ")
+                    .append(quran.getRegistry().getTranslations().size()).append(" loaded\n");
+        }
+
+        MessageCoalescer coalescer = bot.getMessageCoalescer();
+        stats.append("Coalesced notices: ").append(coalescer.getQueuedCount()).append(" queued, ")
+                .append(coalescer.getSentCount()).append(" messages sent, ")
+                .append(coalescer.getSavedSends()).append(" sends saved, ")
+                .append(coalescer.getPendingCount()).append(" pending\n");
+
+        stats.append("Approval channels: ").append(bot.getApprovalChannelIndex().size()).append(" indexed\n");
+
+        RoleCache roleCache = bot.getRoleCache();
+        stats.append("Role cache: ").append(roleCache.size()).append(" roles, ")
+                .append(roleCache.getHitCount()).append(" hits, ")
+                .append(roleCache.getMissCount()).append(" misses\n");
+
+        stats.append("Ticket reaper: ").append(bot.getTicketReaper().getTrackedCount()).append(" tickets tracked, ")
+                .append(bot.getTicketReaper().getReapedCount()).append(" closed for inactivity\n");
+
+        TicketQueue ticketQueue = bot.getTicketQueue();
+        stats.append("Ticket queue: ").append(ticketQueue.getWaitingCount(server.getId())).append(" waiting here, ")
+                .append(ticketQueue.getWaitingCount()).append(" in total, ")
+                .append(ticketQueue.getEnqueuedCount()).append(" queued, ")
+                .append(ticketQueue.getPromotedCount()).append(" promoted")
+                .append(String.format(" (avg wait %.0f s, max %d s)\n", ticketQueue.getAverageWaitSeconds(),
+                        ticketQueue.getMaxWaitSeconds()));
+        stats.append("Ticket transcripts: ").append(bot.getTranscriptRecorder().getOpenCount()).append(" open streams, ")
+                .append(bot.getTicketArchive().size()).append(" tickets archived\n");
+
+        channel.sendMessage(stats.toString());
+    }
+}
@@ -0,0 +1,94 @@
+package com.miclesworkshop.halalbot.quran;
+
+/**
+ * Folds Arabic text to a bare skeleton so it can be matched regardless of how fully it is vowelled: harakat,
+ * Quranic annotation marks and tatweel are removed, alef and hamza carriers are unified, and ta marbuta and
+ * alef maksura are folded into ha and ya. Text outside the Arabic block is passed through unchanged.
+ */
+public final class ArabicNormalizer {
+    private static final char BLOCK_START = '\u0600';
+    private static final char DROP = '\0';
+
+    // replacement for each character of the Arabic block, DROP to remove it
+    private static final char[] TABLE = new char[256];
+
+    static {
+        for (int i = 0; i < TABLE.length; i++) {
+            TABLE[i] = (char) (BLOCK_START + i);
+        }
+
+        dropRange('\u064b', '\u065f'); // harakat: tanween, fatha, damma, kasra, shadda, sukun, ...
+        dropRange('\u0670', '\u0670'); // superscript alef
+        dropRange('\u06d6', '\u06ed'); // Quranic annotation signs
+        dropRange('\u0640', '\u0640'); // tatweel
+
+        map('\u0622', '\u0627'); // alef with madda
+        map('\u0623', '\u0627'); // alef with hamza above
+        map('\u0625', '\u0627'); // alef with hamza below
+        map('\u0671', '\u0627'); // alef wasla
+        map('\u0672', '\u0627'); // alef with wavy hamza above
+        map('\u0673', '\u0627'); // alef with wavy hamza below
+        map('\u0624', '\u0648'); // waw with hamza -> waw
+        map('\u0626', '\u064a'); // ya with hamza -> ya
+        map('\u0649', '\u064a'); // alef maksura -> ya
+        map('\u06cc', '\u064a'); // farsi ya -> ya
+        map('\u0629', '\u0647'); // ta marbuta -> ha
+        map('\u06a9', '\u0643'); // keheh -> kaf
+    }
+
+    private ArabicNormalizer() {
+    }
+
+    private static void dropRange(char from, char to) {
+        for (char c = from; c <= to; c++) {
+            TABLE[c - BLOCK_START] = DROP;
+        }
+    }
+
+    private static void map(char from, char to) {
+        TABLE[from - BLOCK_START] = to;
+    }
+
+    public static String normalize(CharSequence text) {
+        StringBuilder normalized = new StringBuilder(text.length());
+        normalize(text, normalized);
+        return normalized.toString();
+    }
+
+    /**
+     * Appends the normalized form of {@code text} to {@code out}.
+     */
+    public static void normalize(CharSequence text, StringBuilder out) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (isArabicBlock(c)) {
+                c = TABLE[c - BLOCK_START];
+
+                if (c == DROP) {
+                    continue;
+                }
+            }
+
+            out.append(c);
+        }
+    }
+
+    /**
+     * @return true if the character is in the Arabic block and survives normalization
+     */
+    public static boolean isArabic(char c) {
+        return isArabicBlock(c) && TABLE[c - BLOCK_START] != DROP;
+    }
+
+    /**
+     * @return true if the character is removed by normalization
+     */
+    public static boolean isDropped(char c) {
+        return isArabicBlock(c) && TABLE[c - BLOCK_START] == DROP;
+    }
+
+    private static boolean isArabicBlock(char c) {
+        return c >= BLOCK_START && c < BLOCK_START + TABLE.length;
+    }
+}
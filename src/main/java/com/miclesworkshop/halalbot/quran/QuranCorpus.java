@@ -0,0 +1,209 @@
+package com.miclesworkshop.halalbot.quran;
+
+import com.miclesworkshop.halalbot.storage.AtomicFiles;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Read-only view of the Quran text in the indexed corpus format written by {@link QuranCorpusConverter}.
+ * The file is memory-mapped and ayahs are decoded on demand, so the corpus itself never lives on the heap.
+ * <p>
+ * Layout, all integers big-endian:
+ * <pre>
+ * header   magic, version, CRC32 of everything after the header, length of everything after the header
+ * counts   surah count, texts per ayah
+ * surahs   index of each surah's first ayah, plus one trailing entry holding the total ayah count
+ * offsets  start of each text in the blob, ayah-major, plus one trailing entry holding the blob length
+ * blob     the UTF-8 text of every ayah
+ * </pre>
+ */
+public final class QuranCorpus {
+    static final int MAGIC = 0x51524E31; // "QRN1"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+
+    private static final Logger log = Logger.getLogger(QuranCorpus.class.getName());
+
+    public enum Text {
+        ARABIC, TRANSLATION
+    }
+
+    private final ByteBuffer buffer;
+    private final int surahCount;
+    private final int textsPerAyah;
+    private final int surahTable;
+    private final int offsetTable;
+    private final int blob;
+
+    QuranCorpus(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if (buffer.limit() < HEADER_BYTES + 8 || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a Quran corpus file");
+        }
+
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported Quran corpus version " + buffer.getInt(4));
+        }
+
+        if (buffer.getInt(12) != buffer.limit() - HEADER_BYTES) {
+            throw new IOException("Quran corpus is truncated");
+        }
+
+        // a couple of MB read once per mapping, against text that would otherwise come out garbled
+        ByteBuffer body = buffer.duplicate();
+        // through Buffer, since a JDK 9+ javac would otherwise link ByteBuffer.position(int), which Java 8 lacks
+        ((Buffer) body).position(HEADER_BYTES);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+
+        if ((int) crc.getValue() != buffer.getInt(8)) {
+            throw new IOException("Quran corpus is corrupted, its checksum doesn't match");
+        }
+
+        surahCount = buffer.getInt(HEADER_BYTES);
+        textsPerAyah = buffer.getInt(HEADER_BYTES + 4);
+
+        if (textsPerAyah < Text.values().length) {
+            throw new IOException("Quran corpus has " + textsPerAyah + " texts per ayah");
+        }
+
+        surahTable = HEADER_BYTES + 8;
+        offsetTable = surahTable + (surahCount + 1) * 4;
+        blob = offsetTable + (getTotalAyahCount() * textsPerAyah + 1) * 4;
+    }
+
+    /**
+     * Maps a corpus file into memory, after checking it against the checksum in its header.
+     */
+    public static QuranCorpus map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return new QuranCorpus(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Copies the corpus bundled as a class path resource to {@code target} unless an intact copy of it is already
+     * there, and maps it. Files inside the jar can't be mapped, hence the copy.
+     */
+    public static QuranCorpus extractAndMap(String resource, File target) throws IOException {
+        byte[] header = new byte[HEADER_BYTES];
+
+        try (InputStream in = open(resource)) {
+            new DataInputStream(in).readFully(header);
+        }
+
+        if (Arrays.equals(header, readHeader(target))) {
+            try {
+                return map(target);
+            } catch (IOException e) {
+                // the header matches but the body was damaged on disk, so extract it again
+                log.warning("Extracting " + resource + " again: " + e.getMessage());
+            }
+        }
+
+        try (InputStream in = open(resource)) {
+            AtomicFiles.writeBytes(target, out -> {
+                byte[] chunk = new byte[8192];
+                int read;
+                while ((read = in.read(chunk)) != -1) {
+                    out.write(chunk, 0, read);
+                }
+            });
+        }
+
+        return map(target);
+    }
+
+    public int getSurahCount() {
+        return surahCount;
+    }
+
+    public int getTotalAyahCount() {
+        return buffer.getInt(surahTable + surahCount * 4);
+    }
+
+    /**
+     * @param surah the surah number, starting at 1
+     */
+    public int getAyahCount(int surah) {
+        checkSurah(surah);
+        return firstAyah(surah + 1) - firstAyah(surah);
+    }
+
+    /**
+     * @param surah the surah number, starting at 1
+     * @param ayah  the ayah number within the surah, starting at 1
+     */
+    public String getText(int surah, int ayah, Text text) {
+        if (ayah < 1 || ayah > getAyahCount(surah)) {
+            throw new IndexOutOfBoundsException("Surah " + surah + " has no ayah " + ayah);
+        }
+
+        int entry = offsetTable + ((firstAyah(surah) + ayah - 1) * textsPerAyah + text.ordinal()) * 4;
+        int start = buffer.getInt(entry);
+        int end = buffer.getInt(entry + 4);
+
+        byte[] bytes = new byte[end - start];
+        ByteBuffer view = buffer.duplicate();
+        ((Buffer) view).position(blob + start);
+        view.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int firstAyah(int surah) {
+        return buffer.getInt(surahTable + (surah - 1) * 4);
+    }
+
+    private void checkSurah(int surah) {
+        if (surah < 1 || surah > surahCount) {
+            throw new IndexOutOfBoundsException("Surah " + surah + " not found");
+        }
+    }
+
+    static int checksum(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    private static InputStream open(String resource) throws IOException {
+        InputStream in = QuranCorpus.class.getResourceAsStream(resource);
+
+        if (in == null) {
+            throw new IOException("Resource " + resource + " not found");
+        }
+
+        return in;
+    }
+
+    private static byte[] readHeader(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        byte[] header = new byte[HEADER_BYTES];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(header);
+        } catch (EOFException e) {
+            return null;
+        }
+
+        return header;
+    }
+}
@@ -0,0 +1,83 @@
+package com.miclesworkshop.halalbot.quran;
+
+import com.miclesworkshop.halalbot.storage.AtomicFiles;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Build-time tool that converts the Java-serialized {@code String[][][]} Quran data (surah, ayah,
+ * arabic/english) into the indexed format read by {@link QuranCorpus}. Run it with
+ * {@code gradle convertQuranCorpus}.
+ */
+public final class QuranCorpusConverter {
+    private QuranCorpusConverter() {
+    }
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        if (args.length != 2) {
+            System.err.println("Usage: QuranCorpusConverter <serialized input> <corpus output>");
+            System.exit(1);
+            return;
+        }
+
+        String[][][] data;
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(args[0]))) {
+            data = (String[][][]) in.readObject();
+        }
+
+        byte[] corpus = convert(data);
+        AtomicFiles.writeBytes(new File(args[1]), out -> out.write(corpus));
+
+        System.out.println("Wrote " + corpus.length + " bytes to " + args[1]);
+    }
+
+    static byte[] convert(String[][][] data) throws IOException {
+        int textsPerAyah = QuranCorpus.Text.values().length;
+
+        ByteArrayOutputStream blob = new ByteArrayOutputStream();
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+
+        body.writeInt(data.length);
+        body.writeInt(textsPerAyah);
+
+        int ayahs = 0;
+        for (String[][] surah : data) {
+            body.writeInt(ayahs);
+            ayahs += surah.length;
+        }
+        body.writeInt(ayahs);
+
+        for (String[][] surah : data) {
+            for (String[] ayah : surah) {
+                for (int text = 0; text < textsPerAyah; text++) {
+                    body.writeInt(blob.size());
+                    blob.write(ayah[text].getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+        body.writeInt(blob.size());
+
+        blob.writeTo(body);
+        body.flush();
+
+        byte[] bodyArray = bodyBytes.toByteArray();
+
+        ByteArrayOutputStream fileBytes = new ByteArrayOutputStream(QuranCorpus.HEADER_BYTES + bodyArray.length);
+        DataOutputStream file = new DataOutputStream(fileBytes);
+        file.writeInt(QuranCorpus.MAGIC);
+        file.writeInt(QuranCorpus.VERSION);
+        file.writeInt(QuranCorpus.checksum(bodyArray));
+        file.writeInt(bodyArray.length);
+        file.write(bodyArray);
+        file.flush();
+
+        return fileBytes.toByteArray();
+    }
+}
@@ -0,0 +1,89 @@
+package com.miclesworkshop.halalbot.quran;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Knows every translation in the manifest and maps each one's corpus on first use. Loaded corpora are shared by
+ * all servers and only softly held, so translations nobody has asked for lately can be dropped when memory runs
+ * low and are mapped again the next time they are needed.
+ */
+public class QuranCorpusRegistry {
+    private final Map<String, Translation> translations = new LinkedHashMap<>();
+    private final Translation defaultTranslation;
+    private final LoadingCache<String, QuranCorpus> corpora;
+
+    /**
+     * @param manifest a class path resource listing the translations as JSON; the first one is the default
+     */
+    public QuranCorpusRegistry(File dataFolder, String manifest) throws IOException {
+        try (InputStream in = QuranCorpusRegistry.class.getResourceAsStream(manifest)) {
+            if (in == null) {
+                throw new IOException("Resource " + manifest + " not found");
+            }
+
+            try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                for (Translation translation : new Gson().fromJson(reader, Translation[].class)) {
+                    translations.put(translation.getId(), translation);
+                }
+            }
+        }
+
+        Preconditions.checkState(!translations.isEmpty(), "%s lists no translations", manifest);
+        defaultTranslation = translations.values().iterator().next();
+
+        corpora = CacheBuilder.newBuilder()
+                .softValues()
+                .build(new CacheLoader<String, QuranCorpus>() {
+                    @Override
+                    public QuranCorpus load(String id) throws IOException {
+                        String resource = translations.get(id).getResource();
+                        return QuranCorpus.extractAndMap(resource,
+                                new File(dataFolder, resource.substring(resource.lastIndexOf('/') + 1)));
+                    }
+                });
+    }
+
+    public Collection<Translation> getTranslations() {
+        return Collections.unmodifiableCollection(translations.values());
+    }
+
+    public Translation getDefault() {
+        return defaultTranslation;
+    }
+
+    public Optional<Translation> find(String id) {
+        return Optional.ofNullable(id == null ? null : translations.get(id.toLowerCase()));
+    }
+
+    /**
+     * Maps the translation's corpus if it isn't loaded already.
+     */
+    public QuranCorpus get(Translation translation) throws IOException {
+        try {
+            return corpora.get(translation.getId());
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    public long getLoadedCount() {
+        return corpora.size();
+    }
+}
@@ -0,0 +1,406 @@
+package com.miclesworkshop.halalbot.quran;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Inverted index over the English translation and the Arabic text of every ayah, built once from a
+ * {@link QuranCorpus}. Postings keep term positions so quoted phrases can be matched, and results are ranked
+ * with BM25 and cut to the top k with a bounded heap.
+ * <p>
+ * Arabic is indexed in its {@link ArabicNormalizer normalized} form. The normalized text of every ayah is also
+ * kept, in one string with an offset per ayah, so Arabic fragments that are not whole words (a word with its
+ * attached prefixes, for example) can be found without normalizing the corpus again for every query.
+ */
+public final class QuranIndex {
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    // keeps phrases from matching across the end of the English text and the start of the Arabic text
+    private static final int FIELD_GAP = 16;
+
+    private final Map<String, Integer> termIds;
+    private final Posting[] postings;
+
+    private final int[] docSurah;
+    private final int[] docAyah;
+    private final int[] docLengths;
+    private final float averageDocLength;
+
+    // normalized Arabic of every ayah separated by newlines, and where each ayah starts, parallel to docSurah
+    private final String arabicText;
+    private final int[] arabicStarts;
+
+    private QuranIndex(Map<String, Integer> termIds, Posting[] postings, int[] docSurah, int[] docAyah,
+                       int[] docLengths, String arabicText, int[] arabicStarts) {
+        this.termIds = termIds;
+        this.postings = postings;
+        this.docSurah = docSurah;
+        this.docAyah = docAyah;
+        this.docLengths = docLengths;
+        this.arabicText = arabicText;
+        this.arabicStarts = arabicStarts;
+
+        long totalLength = 0;
+        for (int length : docLengths) {
+            totalLength += length;
+        }
+        averageDocLength = docLengths.length == 0 ? 1 : Math.max(1, totalLength / (float) docLengths.length);
+    }
+
+    public static QuranIndex build(QuranCorpus corpus) {
+        int docCount = corpus.getTotalAyahCount();
+        int[] docSurah = new int[docCount];
+        int[] docAyah = new int[docCount];
+        int[] docLengths = new int[docCount];
+        int[] arabicStarts = new int[docCount];
+        StringBuilder arabicText = new StringBuilder();
+
+        Map<String, Integer> termIds = new HashMap<>();
+        List<PostingBuilder> builders = new ArrayList<>();
+
+        int doc = 0;
+        for (int surah = 1; surah <= corpus.getSurahCount(); surah++) {
+            for (int ayah = 1; ayah <= corpus.getAyahCount(surah); ayah++, doc++) {
+                docSurah[doc] = surah;
+                docAyah[doc] = ayah;
+
+                List<String> tokens = tokenize(corpus.getText(surah, ayah, QuranCorpus.Text.TRANSLATION));
+                int arabicStart = tokens.size() + FIELD_GAP;
+                List<String> arabicTokens = tokenize(corpus.getText(surah, ayah, QuranCorpus.Text.ARABIC));
+
+                arabicStarts[doc] = arabicText.length();
+                arabicText.append(String.join(" ", arabicTokens)).append('\n');
+
+                docLengths[doc] = tokens.size() + arabicTokens.size();
+
+                for (int position = 0; position < tokens.size(); position++) {
+                    builder(termIds, builders, tokens.get(position)).add(doc, position);
+                }
+
+                for (int position = 0; position < arabicTokens.size(); position++) {
+                    builder(termIds, builders, arabicTokens.get(position)).add(doc, arabicStart + position);
+                }
+            }
+        }
+
+        Posting[] postings = new Posting[builders.size()];
+        for (int i = 0; i < postings.length; i++) {
+            postings[i] = builders.get(i).build();
+        }
+
+        return new QuranIndex(termIds, postings, docSurah, docAyah, docLengths, arabicText.toString(), arabicStarts);
+    }
+
+    private static PostingBuilder builder(Map<String, Integer> termIds, List<PostingBuilder> builders, String term) {
+        Integer id = termIds.get(term);
+
+        if (id == null) {
+            id = builders.size();
+            termIds.put(term, id);
+            builders.add(new PostingBuilder());
+        }
+
+        return builders.get(id);
+    }
+
+    public int getTermCount() {
+        return termIds.size();
+    }
+
+    public int getDocumentCount() {
+        return docLengths.length;
+    }
+
+    /**
+     * Ranks ayahs against the query. Bare words are optional and only affect the ranking; words in double
+     * quotes form a phrase that must appear, in order, in every result.
+     *
+     * @return at most {@code limit} hits, best first
+     */
+    public List<Hit> search(String query, int limit) {
+        List<String> terms = new ArrayList<>();
+        List<List<String>> phrases = new ArrayList<>();
+
+        String[] parts = query.split("\"", -1);
+        for (int i = 0; i < parts.length; i++) {
+            List<String> tokens = tokenize(parts[i]);
+            terms.addAll(tokens);
+
+            // odd parts sit between quotes; a one word phrase is just a required word
+            if (i % 2 == 1 && !tokens.isEmpty()) {
+                phrases.add(tokens);
+            }
+        }
+
+        if (terms.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        List<Hit> hits = rank(terms, phrases, limit);
+
+        // Arabic words carry attached prefixes and suffixes, so top up with ayahs containing the query as a fragment
+        String arabicQuery = arabicQuery(terms);
+        if (hits.size() < limit && arabicQuery != null) {
+            for (Hit hit : findArabic(arabicQuery, limit)) {
+                if (hits.size() < limit && hits.stream().noneMatch(h -> h.surah == hit.surah && h.ayah == hit.ayah)) {
+                    hits.add(hit);
+                }
+            }
+        }
+
+        return hits;
+    }
+
+    /**
+     * Finds ayahs whose normalized Arabic contains {@code fragment}, in mushaf order.
+     */
+    public List<Hit> findArabic(String fragment, int limit) {
+        List<Hit> hits = new ArrayList<>();
+        String needle = String.join(" ", tokenize(fragment));
+
+        if (needle.isEmpty()) {
+            return hits;
+        }
+
+        int from = 0;
+        while (hits.size() < limit) {
+            int match = arabicText.indexOf(needle, from);
+
+            if (match == -1) {
+                break;
+            }
+
+            int doc = Arrays.binarySearch(arabicStarts, match);
+            doc = doc >= 0 ? doc : -doc - 2;
+
+            hits.add(new Hit(docSurah[doc], docAyah[doc], 0));
+            from = doc + 1 < arabicStarts.length ? arabicStarts[doc + 1] : arabicText.length();
+        }
+
+        return hits;
+    }
+
+    // the query's Arabic words joined by spaces, or null if it has none
+    private static String arabicQuery(List<String> terms) {
+        StringBuilder query = new StringBuilder();
+
+        for (String term : terms) {
+            if (ArabicNormalizer.isArabic(term.charAt(0))) {
+                query.append(query.length() == 0 ? "" : " ").append(term);
+            }
+        }
+
+        return query.length() == 0 ? null : query.toString();
+    }
+
+    private List<Hit> rank(List<String> terms, List<List<String>> phrases, int limit) {
+        float[] scores = new float[docLengths.length];
+        boolean[] touched = new boolean[docLengths.length];
+        int[] touchedDocs = new int[docLengths.length];
+        int touchedCount = 0;
+
+        for (String term : terms) {
+            Integer id = termIds.get(term);
+
+            if (id == null) {
+                continue;
+            }
+
+            Posting posting = postings[id];
+            float idf = (float) Math.log(1 + (docLengths.length - posting.docs.length + 0.5) / (posting.docs.length + 0.5));
+
+            for (int i = 0; i < posting.docs.length; i++) {
+                int doc = posting.docs[i];
+                int frequency = posting.frequency(i);
+                float norm = K1 * (1 - B + B * docLengths[doc] / averageDocLength);
+
+                scores[doc] += idf * frequency * (K1 + 1) / (frequency + norm);
+
+                if (!touched[doc]) {
+                    touched[doc] = true;
+                    touchedDocs[touchedCount++] = doc;
+                }
+            }
+        }
+
+        PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1, (a, b) -> Float.compare(a.score, b.score));
+
+        for (int i = 0; i < touchedCount; i++) {
+            int doc = touchedDocs[i];
+
+            if (!matchesPhrases(doc, phrases)) {
+                continue;
+            }
+
+            if (best.size() < limit) {
+                best.add(new Hit(docSurah[doc], docAyah[doc], scores[doc]));
+            } else if (scores[doc] > best.peek().score) {
+                best.poll();
+                best.add(new Hit(docSurah[doc], docAyah[doc], scores[doc]));
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>(best);
+        hits.sort((a, b) -> Float.compare(b.score, a.score));
+        return hits;
+    }
+
+    private boolean matchesPhrases(int doc, List<List<String>> phrases) {
+        for (List<String> phrase : phrases) {
+            if (!matchesPhrase(doc, phrase)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean matchesPhrase(int doc, List<String> phrase) {
+        int[][] positions = new int[phrase.size()][];
+
+        for (int i = 0; i < phrase.size(); i++) {
+            Integer id = termIds.get(phrase.get(i));
+
+            if (id == null) {
+                return false;
+            }
+
+            positions[i] = postings[id].positions(doc);
+
+            if (positions[i] == null) {
+                return false;
+            }
+        }
+
+        for (int start : positions[0]) {
+            boolean match = true;
+
+            for (int i = 1; i < positions.length && match; i++) {
+                match = Arrays.binarySearch(positions[i], start + i) >= 0;
+            }
+
+            if (match) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Normalizes Arabic and splits text into lowercase words. Combining marks are dropped without breaking the
+     * word, so vowelled and unvowelled spellings index the same.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        text = ArabicNormalizer.normalize(text);
+
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            if (Character.getType(codePoint) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+
+            if (Character.isLetterOrDigit(codePoint)) {
+                token.appendCodePoint(Character.toLowerCase(codePoint));
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+
+        return tokens;
+    }
+
+    public static final class Hit {
+        private final int surah;
+        private final int ayah;
+        private final float score;
+
+        private Hit(int surah, int ayah, float score) {
+            this.surah = surah;
+            this.ayah = ayah;
+            this.score = score;
+        }
+
+        public int getSurah() {
+            return surah;
+        }
+
+        public int getAyah() {
+            return ayah;
+        }
+
+        public float getScore() {
+            return score;
+        }
+    }
+
+    // postings for one term: ascending doc ids, and for each doc a slice of the shared positions array
+    private static final class Posting {
+        private final int[] docs;
+        private final int[] positionStarts;
+        private final int[] positions;
+
+        private Posting(int[] docs, int[] positionStarts, int[] positions) {
+            this.docs = docs;
+            this.positionStarts = positionStarts;
+            this.positions = positions;
+        }
+
+        private int frequency(int index) {
+            return positionStarts[index + 1] - positionStarts[index];
+        }
+
+        private int[] positions(int doc) {
+            int index = Arrays.binarySearch(docs, doc);
+            return index < 0 ? null : Arrays.copyOfRange(positions, positionStarts[index], positionStarts[index + 1]);
+        }
+    }
+
+    private static final class PostingBuilder {
+        private int[] docs = new int[4];
+        private int[] positionStarts = new int[5];
+        private int[] positions = new int[4];
+        private int docCount;
+        private int positionCount;
+
+        private void add(int doc, int position) {
+            if (docCount == 0 || docs[docCount - 1] != doc) {
+                if (docCount == docs.length) {
+                    docs = Arrays.copyOf(docs, docCount * 2);
+                    positionStarts = Arrays.copyOf(positionStarts, docCount * 2 + 1);
+                }
+
+                docs[docCount] = doc;
+                positionStarts[docCount] = positionCount;
+                docCount++;
+            }
+
+            if (positionCount == positions.length) {
+                positions = Arrays.copyOf(positions, positionCount * 2);
+            }
+
+            positions[positionCount++] = position;
+        }
+
+        private Posting build() {
+            int[] starts = Arrays.copyOf(positionStarts, docCount + 1);
+            starts[docCount] = positionCount;
+            return new Posting(Arrays.copyOf(docs, docCount), starts, Arrays.copyOf(positions, positionCount));
+        }
+    }
+}
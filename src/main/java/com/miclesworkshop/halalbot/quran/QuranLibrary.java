@@ -0,0 +1,64 @@
+package com.miclesworkshop.halalbot.quran;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The bot's Quran corpora together with the search index and render cache built on top of them. The default
+ * translation's corpus is held for good, since it supplies the Arabic text and the search index; other
+ * translations are left to the {@link QuranCorpusRegistry}.
+ */
+public class QuranLibrary {
+    private final Logger log = Logger.getLogger(getClass().getName());
+
+    private QuranCorpusRegistry registry;
+    private QuranCorpus corpus;
+    private QuranIndex index;
+    private QuranRenderer renderer;
+
+    public QuranLibrary(File dataFolder, long renderCacheSize) {
+        try {
+            registry = new QuranCorpusRegistry(dataFolder, "/quran_translations.json");
+            corpus = registry.get(registry.getDefault());
+        } catch (IOException e) {
+            log.log(Level.SEVERE, "Couldn't load the Quran corpus", e);
+            return;
+        }
+
+        long start = System.nanoTime();
+        index = QuranIndex.build(corpus);
+        log.info("Indexed " + index.getDocumentCount() + " ayahs, " + index.getTermCount() + " terms in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+
+        renderer = new QuranRenderer(corpus, registry, renderCacheSize);
+    }
+
+    /**
+     * @return false if the corpus couldn't be loaded, in which case the other getters return null
+     */
+    public boolean isAvailable() {
+        return corpus != null;
+    }
+
+    public QuranCorpusRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * @return the default translation's corpus
+     */
+    public QuranCorpus getCorpus() {
+        return corpus;
+    }
+
+    public QuranIndex getIndex() {
+        return index;
+    }
+
+    public QuranRenderer getRenderer() {
+        return renderer;
+    }
+}
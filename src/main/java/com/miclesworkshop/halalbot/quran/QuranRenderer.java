@@ -0,0 +1,224 @@
+package com.miclesworkshop.halalbot.quran;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Renders ayah ranges into embed pages, one page at a time, and keeps the most recently requested pages so
+ * popular ones are only rendered once. A page holds as many whole ayahs as fit in one embed; ayahs longer than
+ * an embed field are split over several fields.
+ */
+public class QuranRenderer {
+    static final int FIELD_LIMIT = 1024;
+    static final int FIELDS_PER_PAGE = 25;
+    static final int PAGE_LIMIT = 6000;
+
+    // room left on every page for a footer added by the caller, which counts towards the embed limit
+    static final int FOOTER_RESERVE = 200;
+
+    public enum Mode {
+        BOTH, ARABIC, TRANSLATION
+    }
+
+    private final QuranCorpus arabic;
+    private final QuranCorpusRegistry registry;
+    private final Cache<Key, Page> cache;
+
+    /**
+     * @param arabic the corpus the Arabic text is taken from, whichever translation is shown with it
+     */
+    public QuranRenderer(QuranCorpus arabic, QuranCorpusRegistry registry, long maximumSize) {
+        this.arabic = arabic;
+        this.registry = registry;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Renders the page that starts at ayah {@code start}, holding as many of the ayahs up to {@code last} as fit.
+     * The next page, if any, starts at {@code getLastAyah() + 1}.
+     */
+    public Page renderPage(Mode mode, Translation translation, int surah, int start, int last) {
+        try {
+            return cache.get(new Key(mode, translation.getId(), surah, start, last),
+                    () -> renderUncached(mode, translation, surah, start, last));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    private Page renderUncached(Mode mode, Translation translation, int surah, int start, int last) throws IOException {
+        QuranCorpus corpus = mode == Mode.ARABIC ? arabic : registry.get(translation);
+        Field credit = new Field("Translation", translation.getName());
+        List<Field> fields = new ArrayList<>();
+        int fieldLimit = FIELDS_PER_PAGE;
+        int lengthLimit = PAGE_LIMIT - FOOTER_RESERVE;
+        int length = 0;
+
+        // every page credits the translation, so leave room for it
+        if (mode != Mode.ARABIC) {
+            fieldLimit--;
+            lengthLimit -= credit.name.length() + credit.value.length();
+        }
+
+        int ayah = start;
+        for (; ayah <= last; ayah++) {
+            List<Field> ayahFields = renderAyah(mode, corpus, surah, ayah);
+            int ayahLength = 0;
+            for (Field field : ayahFields) {
+                ayahLength += field.name.length() + field.value.length();
+            }
+
+            // a single ayah always fits on an empty page, so every page holds at least one
+            if (ayah > start && (fields.size() + ayahFields.size() > fieldLimit || length + ayahLength > lengthLimit)) {
+                break;
+            }
+
+            fields.addAll(ayahFields);
+            length += ayahLength;
+        }
+
+        if (mode != Mode.ARABIC) {
+            fields.add(credit);
+        }
+
+        return new Page(fields, start, ayah - 1);
+    }
+
+    private List<Field> renderAyah(Mode mode, QuranCorpus corpus, int surah, int ayah) {
+        String text;
+        switch (mode) {
+            case ARABIC:
+                text = arabic.getText(surah, ayah, QuranCorpus.Text.ARABIC);
+                break;
+            case TRANSLATION:
+                text = corpus.getText(surah, ayah, QuranCorpus.Text.TRANSLATION);
+                break;
+            default:
+                text = arabic.getText(surah, ayah, QuranCorpus.Text.ARABIC) + "\n"
+                        + corpus.getText(surah, ayah, QuranCorpus.Text.TRANSLATION);
+                break;
+        }
+
+        List<String> parts = split(text, FIELD_LIMIT);
+        List<Field> fields = new ArrayList<>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            String name = surah + ":" + ayah + (parts.size() == 1 ? "" : " (" + (i + 1) + "/" + parts.size() + ")");
+            fields.add(new Field(name, parts.get(i)));
+        }
+
+        return fields;
+    }
+
+    // splits at the last line break or space before the limit, or hard at the limit if there is none
+    static List<String> split(String text, int limit) {
+        List<String> parts = new ArrayList<>();
+
+        while (text.length() > limit) {
+            int cut = text.lastIndexOf('\n', limit);
+            if (cut <= 0) {
+                cut = text.lastIndexOf(' ', limit);
+            }
+            if (cut <= 0) {
+                cut = limit;
+            }
+
+            parts.add(text.substring(0, cut));
+            text = text.substring(cut).trim();
+        }
+
+        parts.add(text);
+        return parts;
+    }
+
+    public static final class Page {
+        private final List<Field> fields;
+        private final int firstAyah;
+        private final int lastAyah;
+
+        private Page(List<Field> fields, int firstAyah, int lastAyah) {
+            this.fields = Collections.unmodifiableList(fields);
+            this.firstAyah = firstAyah;
+            this.lastAyah = lastAyah;
+        }
+
+        public List<Field> getFields() {
+            return fields;
+        }
+
+        public int getFirstAyah() {
+            return firstAyah;
+        }
+
+        public int getLastAyah() {
+            return lastAyah;
+        }
+    }
+
+    public static final class Field {
+        private final String name;
+        private final String value;
+
+        private Field(String name, String value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+
+    private static final class Key {
+        private final Mode mode;
+        private final String translation;
+        private final int surah;
+        private final int start;
+        private final int last;
+
+        private Key(Mode mode, String translation, int surah, int start, int last) {
+            this.mode = mode;
+            this.translation = translation;
+            this.surah = surah;
+            this.start = start;
+            this.last = last;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key key = (Key) o;
+            return mode == key.mode && translation.equals(key.translation) && surah == key.surah && start == key.start && last == key.last;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mode, translation, surah, start, last);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.miclesworkshop.halalbot.quran;
+
+/**
+ * A translation listed in the corpus manifest. Each one is a separate corpus file in the {@link QuranCorpus}
+ * format whose translation text is this translation.
+ */
+public final class Translation {
+    private String id;
+    private String name;
+    private String resource;
+
+    /**
+     * @return the short key used in commands and stored in server data
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the attribution shown under rendered ayahs
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the class path resource holding the corpus
+     */
+    public String getResource() {
+        return resource;
+    }
+}
@@ -0,0 +1,68 @@
+package com.miclesworkshop.halalbot.storage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+public final class AtomicFiles {
+    private AtomicFiles() {
+    }
+
+    public interface WriterConsumer {
+        void accept(Writer writer) throws IOException;
+    }
+
+    public interface StreamConsumer {
+        void accept(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes to a temp file next to the target, fsyncs it and renames it over the target, so a crash
+     * leaves either the old or the new contents but never a truncated file.
+     */
+    public static void write(File target, WriterConsumer contents) throws IOException {
+        writeBytes(target, out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            contents.accept(writer);
+            writer.flush();
+        });
+    }
+
+    /**
+     * Binary variant of {@link #write(File, WriterConsumer)}.
+     */
+    public static void writeBytes(File target, StreamConsumer contents) throws IOException {
+        File temp = new File(target.getParentFile(), target.getName() + ".tmp");
+
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            contents.accept(out);
+            out.flush();
+            out.getFD().sync();
+        }
+
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        syncDirectory(target.getAbsoluteFile().getParentFile());
+    }
+
+    // makes the rename itself durable; not every platform allows opening a directory, so this is best effort
+    static void syncDirectory(File directory) {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package com.miclesworkshop.halalbot.storage;
+
+import com.google.common.util.concurrent.Striped;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.miclesworkshop.halalbot.ServerData;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stores server data as a JSON snapshot plus an append-only journal of {@link ServerDataChange}s, one JSON
+ * object per line. Changes are applied in memory immediately and appended to the journal in batches on the
+ * scheduler, so the cost of a write is the size of the change rather than the size of every server's state.
+ * Once the journal grows past a threshold it is folded into a new snapshot and truncated.
+ * <p>
+ * Reads are lock-free. Changes to one server are serialized by a lock striped on the server id, which is also
+ * held while that server is copied for a snapshot, so a snapshot never sees a half-applied change. Journal
+ * appends and compaction are serialized by a separate lock and never block callers of {@link #apply}.
+ * <p>
+ * The snapshot uses the same format as the old server_data.json, so existing data folders load unchanged.
+ */
+public class JournalServerDataRepository implements ServerDataRepository {
+    private static final int COMPACTION_THRESHOLD = 1000;
+
+    private final Logger log = Logger.getLogger(getClass().getName());
+
+    private final Gson gson = new Gson();
+    private final File snapshotFile;
+    private final File journalFile;
+    private final ScheduledExecutorService scheduler;
+    private final long flushDelayMillis;
+
+    private final ConcurrentMap<Long, ServerData> serverDataMap;
+    private final Striped<Lock> serverLocks = Striped.lock(64);
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Queue<JournalEntry> pending = new ConcurrentLinkedQueue<>();
+
+    // guarded by journalLock
+    private final Object journalLock = new Object();
+    private final List<JournalEntry> unwritten = new ArrayList<>();
+    private int journalEntries;
+    private long journalBytes;
+    private long compactions;
+
+    public JournalServerDataRepository(File snapshotFile, File journalFile, ScheduledExecutorService scheduler,
+                                       long flushDelay, TimeUnit unit) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = journalFile;
+        this.scheduler = scheduler;
+        this.flushDelayMillis = unit.toMillis(flushDelay);
+
+        serverDataMap = readSnapshot();
+        replayJournal();
+    }
+
+    private ConcurrentMap<Long, ServerData> readSnapshot() {
+        if (!snapshotFile.exists()) {
+            log.info("No server data snapshot, starting empty");
+            return new ConcurrentHashMap<>();
+        }
+
+        log.info("Reading server data...");
+        try (FileReader reader = new FileReader(snapshotFile)) {
+            Type type = new TypeToken<Map<Long, ServerData>>() {
+            }.getType();
+            Map<Long, ServerData> snapshot = gson.fromJson(reader, type);
+            log.info("  -> Read " + snapshot.size() + " servers.");
+            return new ConcurrentHashMap<>(snapshot);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void replayJournal() {
+        if (!journalFile.exists()) {
+            return;
+        }
+
+        byte[] journal;
+        try {
+            // the journal is compacted every COMPACTION_THRESHOLD entries, so it is small enough to read whole
+            journal = Files.readAllBytes(journalFile.toPath());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        int start = 0;
+        for (int end = 0; end < journal.length; end++) {
+            if (journal[end] == '\n') {
+                replayLine(new String(journal, start, end - start, StandardCharsets.UTF_8));
+                start = end + 1;
+            }
+        }
+        journalBytes = start;
+
+        if (start < journal.length) {
+            // a line without its newline was torn by a crash mid-append. Cut it off, or the next append would be
+            // written onto the end of it and be lost with it on the next replay
+            log.warning("Dropping torn journal line: " + new String(journal, start, journal.length - start,
+                    StandardCharsets.UTF_8));
+
+            try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+                out.getChannel().truncate(start);
+                out.getFD().sync();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        log.info("  -> Replayed " + journalEntries + " journal entries.");
+    }
+
+    private void replayLine(String line) {
+        JournalEntry entry;
+        try {
+            entry = gson.fromJson(line, JournalEntry.class);
+        } catch (JsonParseException e) {
+            log.warning("Skipping unreadable journal line: " + line);
+            return;
+        }
+
+        // gson reads a blank line as null
+        if (entry == null || entry.change == null) {
+            return;
+        }
+
+        entry.change.applyTo(serverDataMap.computeIfAbsent(entry.server, id -> new ServerData()));
+        journalEntries++;
+    }
+
+    @Override
+    public boolean contains(long serverId) {
+        return serverDataMap.containsKey(serverId);
+    }
+
+    @Override
+    public ServerData get(long serverId) {
+        ServerData data = serverDataMap.get(serverId);
+
+        if (data == null) {
+            apply(serverId, ServerDataChange.registered());
+            data = serverDataMap.get(serverId);
+        }
+
+        return data;
+    }
+
+    @Override
+    public void apply(long serverId, ServerDataChange change) {
+        Lock lock = serverLocks.get(serverId);
+        lock.lock();
+        try {
+            change.applyTo(serverDataMap.computeIfAbsent(serverId, id -> new ServerData()));
+            // queued under the server's lock so its changes reach the journal in the order they were applied
+            pending.add(new JournalEntry(serverId, change));
+        } finally {
+            lock.unlock();
+        }
+
+        scheduleFlush();
+    }
+
+    @Override
+    public int size() {
+        return serverDataMap.size();
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public int getJournalEntries() {
+        synchronized (journalLock) {
+            return journalEntries;
+        }
+    }
+
+    public long getJournalBytes() {
+        synchronized (journalLock) {
+            return journalBytes;
+        }
+    }
+
+    public long getCompactions() {
+        synchronized (journalLock) {
+            return compactions;
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.schedule(this::flush, flushDelayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // shutting down, whatever is still pending is written by close() or lost with the process
+                flushScheduled.set(false);
+                log.warning("Couldn't schedule a server data flush, the scheduler is shut down");
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        synchronized (journalLock) {
+            flushScheduled.set(false);
+            appendPending();
+
+            if (journalEntries >= COMPACTION_THRESHOLD) {
+                compact();
+            }
+        }
+    }
+
+    private boolean appendPending() {
+        JournalEntry polled;
+        while ((polled = pending.poll()) != null) {
+            unwritten.add(polled);
+        }
+
+        if (unwritten.isEmpty()) {
+            return true;
+        }
+
+        try (FileOutputStream out = new FileOutputStream(journalFile, true);
+             Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            for (JournalEntry entry : unwritten) {
+                String line = gson.toJson(entry);
+                writer.write(line);
+                writer.write('\n');
+                journalBytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+            }
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            // a partially written batch is fine to append again, since replaying a change is idempotent
+            log.log(Level.SEVERE, "Failed to append to " + journalFile + ", will retry", e);
+            scheduleFlush();
+            return false;
+        }
+
+        journalEntries += unwritten.size();
+        unwritten.clear();
+        return true;
+    }
+
+    /**
+     * Folds the journal into a fresh snapshot. A crash between writing the snapshot and truncating the journal
+     * only means the journal is replayed onto a snapshot that already contains it, which is harmless.
+     */
+    public void compact() {
+        synchronized (journalLock) {
+            if (!appendPending()) {
+                // the journal is failing, truncating it now could lose the changes that didn't make it in
+                return;
+            }
+
+            try {
+                Map<Long, ServerData> snapshot = snapshot();
+                AtomicFiles.write(snapshotFile, writer -> gson.toJson(snapshot, writer));
+
+                try (FileOutputStream out = new FileOutputStream(journalFile, false)) {
+                    out.getFD().sync();
+                }
+            } catch (IOException e) {
+                log.log(Level.SEVERE, "Failed to compact server data journal", e);
+                return;
+            }
+
+            log.info("Compacted " + journalEntries + " journal entries into " + snapshotFile.getName());
+            journalEntries = 0;
+            journalBytes = 0;
+            compactions++;
+        }
+    }
+
+    /**
+     * @return a deep copy of every server's data, each copied while holding that server's lock
+     */
+    public Map<Long, ServerData> snapshot() {
+        Map<Long, ServerData> snapshot = new HashMap<>();
+
+        for (Map.Entry<Long, ServerData> entry : serverDataMap.entrySet()) {
+            Lock lock = serverLocks.get(entry.getKey());
+            lock.lock();
+            try {
+                snapshot.put(entry.getKey(), new ServerData(entry.getValue()));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        return snapshot;
+    }
+
+    @Override
+    public void close() {
+        synchronized (journalLock) {
+            flush();
+
+            if (journalEntries > 0 || !snapshotFile.exists()) {
+                compact();
+            }
+        }
+    }
+
+    private static class JournalEntry {
+        private long server;
+        private ServerDataChange change;
+
+        JournalEntry(long server, ServerDataChange change) {
+            this.server = server;
+            this.change = change;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.miclesworkshop.halalbot.storage;
+
+import com.miclesworkshop.halalbot.ServerData;
+
+/**
+ * A single delta to a server's {@link ServerData}, small enough to be appended to the journal as one line.
+ * Every change sets a value rather than adjusting it, so replaying a change twice is harmless.
+ */
+public final class ServerDataChange {
+    public enum Type {
+        REGISTERED,
+        ROLE_ADDED,
+        ROLE_REMOVED,
+        LIMBO_CHANNEL,
+        JAIL_CHANNEL,
+        LOGS_CHANNEL,
+        JAILED_ROLE,
+        SLOWMODE_THRESHOLD,
+        SLOWMODE_WINDOW,
+        SLOWMODE_COOLDOWN,
+        QURAN_TRANSLATION,
+        DAILY_AYAH_CHANNEL,
+        DAILY_AYAH_MINUTE,
+        TICKET_TIMEOUT
+    }
+
+    private final Type type;
+    private final String key;
+    private final long value;
+
+    private ServerDataChange(Type type, String key, long value) {
+        this.type = type;
+        this.key = key;
+        this.value = value;
+    }
+
+    public static ServerDataChange registered() {
+        return new ServerDataChange(Type.REGISTERED, null, 0);
+    }
+
+    public static ServerDataChange roleAdded(String key, long roleId) {
+        return new ServerDataChange(Type.ROLE_ADDED, key, roleId);
+    }
+
+    public static ServerDataChange roleRemoved(String key) {
+        return new ServerDataChange(Type.ROLE_REMOVED, key, 0);
+    }
+
+    public static ServerDataChange limboChannel(long channelId) {
+        return new ServerDataChange(Type.LIMBO_CHANNEL, null, channelId);
+    }
+
+    public static ServerDataChange jailChannel(long channelId) {
+        return new ServerDataChange(Type.JAIL_CHANNEL, null, channelId);
+    }
+
+    public static ServerDataChange logsChannel(long channelId) {
+        return new ServerDataChange(Type.LOGS_CHANNEL, null, channelId);
+    }
+
+    public static ServerDataChange jailedRole(long roleId) {
+        return new ServerDataChange(Type.JAILED_ROLE, null, roleId);
+    }
+
+    public static ServerDataChange slowmodeThreshold(int messages) {
+        return new ServerDataChange(Type.SLOWMODE_THRESHOLD, null, messages);
+    }
+
+    public static ServerDataChange slowmodeWindow(int seconds) {
+        return new ServerDataChange(Type.SLOWMODE_WINDOW, null, seconds);
+    }
+
+    public static ServerDataChange slowmodeCooldown(int minutes) {
+        return new ServerDataChange(Type.SLOWMODE_COOLDOWN, null, minutes);
+    }
+
+    /**
+     * @param translationId the translation id, or null to go back to the bot's default
+     */
+    public static ServerDataChange quranTranslation(String translationId) {
+        return new ServerDataChange(Type.QURAN_TRANSLATION, translationId, 0);
+    }
+
+    /**
+     * @param channelId the channel to post to, or 0 to stop posting
+     */
+    public static ServerDataChange dailyAyahChannel(long channelId) {
+        return new ServerDataChange(Type.DAILY_AYAH_CHANNEL, null, channelId);
+    }
+
+    public static ServerDataChange dailyAyahMinute(int minuteOfDay) {
+        return new ServerDataChange(Type.DAILY_AYAH_MINUTE, null, minuteOfDay);
+    }
+
+    /**
+     * @param hours how long a ticket may go without messages before it is closed, or 0 to never close it
+     */
+    public static ServerDataChange ticketTimeout(int hours) {
+        return new ServerDataChange(Type.TICKET_TIMEOUT, null, hours);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    void applyTo(ServerData data) {
+        switch (type) {
+            case REGISTERED:
+                break;
+            case ROLE_ADDED:
+                data.putRole(key, value);
+                break;
+            case ROLE_REMOVED:
+                data.removeRole(key);
+                break;
+            case LIMBO_CHANNEL:
+                data.setLimboChannel(value);
+                break;
+            case JAIL_CHANNEL:
+                data.setJailChannel(value);
+                break;
+            case LOGS_CHANNEL:
+                data.setLogsChannel(value);
+                break;
+            case JAILED_ROLE:
+                data.setJailedRoleId(value);
+                break;
+            case SLOWMODE_THRESHOLD:
+                data.setSlowmodeThreshold((int) value);
+                break;
+            case SLOWMODE_WINDOW:
+                data.setSlowmodeWindowSeconds((int) value);
+                break;
+            case SLOWMODE_COOLDOWN:
+                data.setSlowmodeCooldownMinutes((int) value);
+                break;
+            case QURAN_TRANSLATION:
+                data.setQuranTranslation(key);
+                break;
+            case DAILY_AYAH_CHANNEL:
+                data.setDailyAyahChannel(value);
+                break;
+            case DAILY_AYAH_MINUTE:
+                data.setDailyAyahMinute((int) value);
+                break;
+            case TICKET_TIMEOUT:
+                data.setTicketTimeoutHours((int) value);
+                break;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return type + (key == null ? "" : " " + key) + (value == 0 ? "" : " " + value);
+    }
+}
@@ -0,0 +1,30 @@
+package com.miclesworkshop.halalbot.storage;
+
+import com.miclesworkshop.halalbot.ServerData;
+
+/**
+ * Per-server state. {@link ServerData} returned by {@link #get(long)} must be treated as read-only;
+ * all changes go through {@link #apply(long, ServerDataChange)} so they can be persisted as deltas.
+ */
+public interface ServerDataRepository {
+    boolean contains(long serverId);
+
+    /**
+     * @return the data for the server, registering it first if it is unknown
+     */
+    ServerData get(long serverId);
+
+    void apply(long serverId, ServerDataChange change);
+
+    int size();
+
+    /**
+     * Persists every change applied so far.
+     */
+    void flush();
+
+    /**
+     * Flushes and compacts the storage; the repository must not be used afterwards.
+     */
+    void close();
+}
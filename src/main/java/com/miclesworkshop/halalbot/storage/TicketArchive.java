@@ -0,0 +1,385 @@
+package com.miclesworkshop.halalbot.storage;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps closed approval tickets on disk: each ticket's transcript as a gzipped text file, and one line per ticket
+ * in an append-only index. The index is loaded into memory at startup and kept there, sorted by close time and
+ * grouped by server, user, moderator and outcome, so a lookup only looks at the tickets that can match.
+ */
+public class TicketArchive {
+    public enum Outcome {
+        APPROVED,
+        BANNED,
+        CLOSED
+    }
+
+    private final Logger log = Logger.getLogger(getClass().getName());
+
+    private final File folder;
+    private final File indexFile;
+
+    // every list is in order of closing
+    private final ListMultimap<Long, Ticket> byServer = ArrayListMultimap.create();
+    private final ListMultimap<Long, Ticket> byUser = ArrayListMultimap.create();
+    private final ListMultimap<Long, Ticket> byModerator = ArrayListMultimap.create();
+    private final Map<Outcome, List<Ticket>> byOutcome = new EnumMap<>(Outcome.class);
+
+    public TicketArchive(File folder) throws IOException {
+        this.folder = folder;
+        this.indexFile = new File(folder, "index.tsv");
+
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Couldn't create the archive folder " + folder);
+        }
+
+        for (Outcome outcome : Outcome.values()) {
+            byOutcome.put(outcome, new ArrayList<>());
+        }
+
+        if (indexFile.isFile()) {
+            truncateTornLine();
+
+            List<Ticket> loaded = new ArrayList<>();
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile),
+                    StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        loaded.add(Ticket.parse(line));
+                    } catch (IllegalArgumentException e) {
+                        log.warning("Skipping broken archive index line: " + line);
+                    }
+                }
+            }
+
+            // appended in order of closing already, unless the clock was changed in between
+            loaded.sort(Comparator.comparingLong(Ticket::getClosedAt));
+            loaded.forEach(this::addToIndex);
+        }
+    }
+
+    /**
+     * Starts archiving a ticket. Nothing is visible in the archive until {@link Draft#commit()}.
+     */
+    public Draft begin(long ticketId, long serverId, long userId, long moderatorId, Outcome outcome, String reason)
+            throws IOException {
+        File serverFolder = new File(folder, Long.toString(serverId));
+        if (!serverFolder.isDirectory() && !serverFolder.mkdirs()) {
+            throw new IOException("Couldn't create the archive folder " + serverFolder);
+        }
+
+        return new Draft(serverFolder, ticketId, serverId, userId, moderatorId, outcome, reason);
+    }
+
+    /**
+     * @return the server's tickets matching every given filter, most recent first
+     */
+    public synchronized List<Ticket> find(long serverId, Query query, int limit) {
+        // start from the smallest list that has to contain every match
+        List<Ticket> candidates = byServer.get(serverId);
+
+        if (query.userId != 0) {
+            candidates = smaller(candidates, byUser.get(query.userId));
+        }
+        if (query.moderatorId != 0) {
+            candidates = smaller(candidates, byModerator.get(query.moderatorId));
+        }
+        if (query.outcome != null) {
+            candidates = smaller(candidates, byOutcome.get(query.outcome));
+        }
+
+        // every list is sorted by close time, so the date range is a slice of it
+        int from = query.since == null ? 0 : firstClosedAtOrAfter(candidates, query.since.toEpochMilli());
+        int to = query.until == null ? candidates.size() : firstClosedAtOrAfter(candidates, query.until.toEpochMilli());
+
+        List<Ticket> found = new ArrayList<>();
+
+        for (int i = to - 1; i >= from && found.size() < limit; i--) {
+            Ticket ticket = candidates.get(i);
+
+            if (ticket.serverId == serverId
+                    && (query.userId == 0 || ticket.userId == query.userId)
+                    && (query.moderatorId == 0 || ticket.moderatorId == query.moderatorId)
+                    && (query.outcome == null || ticket.outcome == query.outcome)) {
+                found.add(ticket);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * @return the gzipped transcript of one of the server's tickets, if it was archived
+     */
+    public Optional<File> getTranscript(long serverId, long ticketId) {
+        File file = getTranscriptFile(new File(folder, Long.toString(serverId)), ticketId);
+        return file.isFile() ? Optional.of(file) : Optional.empty();
+    }
+
+    public synchronized int size() {
+        return byServer.size();
+    }
+
+    private synchronized void add(Ticket draft) throws IOException {
+        // stamped under the lock, so the index stays in order of closing
+        Ticket ticket = draft.closedAt(System.currentTimeMillis());
+
+        try (FileOutputStream out = new FileOutputStream(indexFile, true);
+             Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            writer.write(ticket.format());
+            writer.write('\n');
+            writer.flush();
+            out.getFD().sync();
+        }
+
+        addToIndex(ticket);
+    }
+
+    /**
+     * Cuts off a last line without its newline, left by a crash mid-append. Read as it is it could parse with the
+     * wrong fields, and the next append would be written onto the end of it.
+     */
+    private void truncateTornLine() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(indexFile, "rw")) {
+            long end = file.length();
+            byte[] chunk = new byte[8192];
+
+            while (end > 0) {
+                int read = (int) Math.min(chunk.length, end);
+                file.seek(end - read);
+                file.readFully(chunk, 0, read);
+
+                for (int i = read - 1; i >= 0; i--) {
+                    if (chunk[i] == '\n') {
+                        long valid = end - read + i + 1;
+
+                        if (valid < file.length()) {
+                            log.warning("Dropping torn archive index line after " + valid + " bytes");
+                            file.setLength(valid);
+                        }
+                        return;
+                    }
+                }
+
+                end -= read;
+            }
+
+            if (file.length() > 0) {
+                log.warning("Dropping torn archive index line");
+                file.setLength(0);
+            }
+        }
+    }
+
+    private void addToIndex(Ticket ticket) {
+        byServer.put(ticket.serverId, ticket);
+        byUser.put(ticket.userId, ticket);
+        if (ticket.moderatorId != 0) {
+            byModerator.put(ticket.moderatorId, ticket);
+        }
+        byOutcome.get(ticket.outcome).add(ticket);
+    }
+
+    private static List<Ticket> smaller(List<Ticket> a, List<Ticket> b) {
+        return b.size() < a.size() ? b : a;
+    }
+
+    private static int firstClosedAtOrAfter(List<Ticket> tickets, long time) {
+        int low = 0;
+        int high = tickets.size();
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (tickets.get(mid).closedAt < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    private static File getTranscriptFile(File serverFolder, long ticketId) {
+        return new File(serverFolder, ticketId + ".txt.gz");
+    }
+
+    /**
+     * A ticket being archived. Its transcript is written to a temp file that only replaces the real one, and only
+     * shows up in the index, once the ticket is committed.
+     */
+    public class Draft {
+        private final File target;
+        private final File temp;
+        private final Writer writer;
+        private final Ticket ticket;
+
+        private Draft(File serverFolder, long ticketId, long serverId, long userId, long moderatorId, Outcome outcome,
+                      String reason) throws IOException {
+            this.target = getTranscriptFile(serverFolder, ticketId);
+            this.temp = new File(serverFolder, target.getName() + ".tmp");
+            this.writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(temp)),
+                    StandardCharsets.UTF_8));
+            this.ticket = new Ticket(ticketId, serverId, userId, moderatorId, outcome, 0, reason);
+        }
+
+        public void writeLine(String line) throws IOException {
+            writer.write(line);
+            writer.write('\n');
+        }
+
+        public void commit() throws IOException {
+            writer.close();
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            add(ticket);
+        }
+
+        public void abort() {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Couldn't close archived transcript " + temp, e);
+            }
+
+            if (temp.exists() && !temp.delete()) {
+                log.warning("Couldn't delete archived transcript " + temp);
+            }
+        }
+    }
+
+    /**
+     * Filters for {@link #find(long, Query, int)}. Unset filters match everything.
+     */
+    public static class Query {
+        private long userId;
+        private long moderatorId;
+        private Outcome outcome;
+        private Instant since;
+        private Instant until;
+
+        public Query user(long userId) {
+            this.userId = userId;
+            return this;
+        }
+
+        public Query moderator(long moderatorId) {
+            this.moderatorId = moderatorId;
+            return this;
+        }
+
+        public Query outcome(Outcome outcome) {
+            this.outcome = outcome;
+            return this;
+        }
+
+        public Query since(Instant since) {
+            this.since = since;
+            return this;
+        }
+
+        public Query until(Instant until) {
+            this.until = until;
+            return this;
+        }
+    }
+
+    public static final class Ticket {
+        private final long ticketId;
+        private final long serverId;
+        private final long userId;
+        private final long moderatorId;
+        private final Outcome outcome;
+        private final long closedAt;
+        private final String reason;
+
+        private Ticket(long ticketId, long serverId, long userId, long moderatorId, Outcome outcome, long closedAt,
+                       String reason) {
+            this.ticketId = ticketId;
+            this.serverId = serverId;
+            this.userId = userId;
+            this.moderatorId = moderatorId;
+            this.outcome = outcome;
+            this.closedAt = closedAt;
+            // one ticket per index line, tab separated
+            this.reason = reason.replaceAll("\\s", " ");
+        }
+
+        private Ticket closedAt(long closedAt) {
+            return new Ticket(ticketId, serverId, userId, moderatorId, outcome, closedAt, reason);
+        }
+
+        private String format() {
+            return ticketId + "\t" + serverId + "\t" + userId + "\t" + moderatorId + "\t" + outcome + "\t" + closedAt
+                    + "\t" + reason;
+        }
+
+        private static Ticket parse(String line) {
+            String[] parts = line.split("\t", 7);
+
+            if (parts.length != 7) {
+                throw new IllegalArgumentException("Expected 7 fields, got " + parts.length);
+            }
+
+            // NumberFormatException is an IllegalArgumentException too
+            return new Ticket(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                    Long.parseLong(parts[3]), Outcome.valueOf(parts[4]), Long.parseLong(parts[5]), parts[6]);
+        }
+
+        /**
+         * @return the id of the ticket's channel, which is unique to the ticket
+         */
+        public long getTicketId() {
+            return ticketId;
+        }
+
+        public long getUserId() {
+            return userId;
+        }
+
+        /**
+         * @return the moderator who closed the ticket, or 0 if it was closed automatically
+         */
+        public long getModeratorId() {
+            return moderatorId;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        public long getClosedAt() {
+            return closedAt;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+    }
+}
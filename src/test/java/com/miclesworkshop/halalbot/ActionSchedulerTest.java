@@ -0,0 +1,169 @@
+package com.miclesworkshop.halalbot;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static com.miclesworkshop.halalbot.ActionScheduler.Priority.APPROVAL;
+import static com.miclesworkshop.halalbot.ActionScheduler.Priority.MODERATION;
+import static com.miclesworkshop.halalbot.ActionScheduler.Priority.NOTICE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ActionSchedulerTest {
+    private final AtomicLong nanos = new AtomicLong();
+
+    // stands in for the REST calls: each call is recorded when it starts and stays pending until completed
+    private final List<String> started = new ArrayList<>();
+    private final Map<String, CompletableFuture<String>> calls = new HashMap<>();
+
+    @Test
+    public void higherPrioritiesGoFirstWhenSaturated() {
+        ActionScheduler scheduler = new ActionScheduler(1, 1, nanos::get);
+
+        scheduler.submit(NOTICE, "busy", call("busy"));
+        scheduler.submit(NOTICE, "a", call("notice"));
+        scheduler.submit(APPROVAL, "b", call("approval"));
+        scheduler.submit(MODERATION, "c", call("moderation"));
+        assertEquals(Arrays.asList("busy"), started);
+        assertEquals(3, scheduler.getQueuedCount());
+
+        complete("busy");
+        complete("moderation");
+        complete("approval");
+
+        assertEquals(Arrays.asList("busy", "moderation", "approval", "notice"), started);
+        assertEquals(0, scheduler.getQueuedCount());
+    }
+
+    @Test
+    public void samePriorityKeepsSubmissionOrder() {
+        ActionScheduler scheduler = new ActionScheduler(1, 1, nanos::get);
+
+        for (int i = 0; i < 5; i++) {
+            scheduler.submit(NOTICE, "route" + i, call("notice" + i));
+        }
+
+        for (int i = 0; i < 4; i++) {
+            complete("notice" + i);
+        }
+
+        assertEquals(Arrays.asList("notice0", "notice1", "notice2", "notice3", "notice4"), started);
+    }
+
+    @Test
+    public void perRouteLimitHoldsWhileOtherRoutesRun() {
+        ActionScheduler scheduler = new ActionScheduler(10, 2, nanos::get);
+
+        for (int i = 0; i < 5; i++) {
+            scheduler.submit(MODERATION, "busy", call("busy" + i));
+        }
+        for (int i = 0; i < 3; i++) {
+            scheduler.submit(NOTICE, "quiet" + i, call("quiet" + i));
+        }
+
+        // the later, lower priority actions on other routes aren't held up by the full route
+        assertEquals(Arrays.asList("busy0", "busy1", "quiet0", "quiet1", "quiet2"), started);
+        assertEquals(5, scheduler.getInFlightCount());
+        assertEquals(3, scheduler.getQueuedCount());
+
+        complete("busy0");
+        assertEquals("busy2", started.get(started.size() - 1));
+        assertEquals(2, runningOn("busy"));
+
+        complete("busy1");
+        complete("busy2");
+        assertEquals(2, runningOn("busy"));
+        assertEquals(0, scheduler.getQueuedCount());
+    }
+
+    @Test
+    public void throwingActionFreesItsSlot() {
+        ActionScheduler scheduler = new ActionScheduler(1, 1, nanos::get);
+
+        CompletableFuture<String> failed = scheduler.submit(MODERATION, "route", () -> {
+            throw new IllegalStateException("no connection");
+        });
+
+        assertTrue(failed.isCompletedExceptionally());
+        assertEquals(0, scheduler.getInFlightCount());
+
+        CompletableFuture<String> next = scheduler.submit(MODERATION, "route", call("next"));
+        assertEquals(Arrays.asList("next"), started);
+
+        complete("next");
+        assertEquals("next done", next.join());
+    }
+
+    @Test
+    public void actionsCompletingSynchronouslyDrainWithoutRecursing() {
+        ActionScheduler scheduler = new ActionScheduler(1, 1, nanos::get);
+
+        scheduler.submit(NOTICE, "route", call("busy"));
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            int value = i;
+            results.add(scheduler.submit(NOTICE, "route", () -> CompletableFuture.completedFuture(value)));
+        }
+
+        // each completion calls back into the scheduler, which must go round again rather than nest
+        complete("busy");
+
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, (int) results.get(i).join());
+        }
+        assertEquals(0, scheduler.getInFlightCount());
+        assertEquals(0, scheduler.getQueuedCount());
+    }
+
+    @Test
+    public void queueTimesAreMeasuredWithTheClock() {
+        ActionScheduler scheduler = new ActionScheduler(1, 1, nanos::get);
+
+        scheduler.submit(MODERATION, "route", call("first"));
+        scheduler.submit(NOTICE, "route", call("second"));
+
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(30));
+        complete("first");
+
+        scheduler.submit(NOTICE, "route", call("third"));
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+        complete("second");
+
+        // second waited 30 ms, third 10 ms, first didn't wait at all
+        assertEquals(2, scheduler.getStartedCount(NOTICE));
+        assertEquals(20, scheduler.getAverageQueueMillis(NOTICE), 0.001);
+        assertEquals(30, scheduler.getMaxQueueMillis(NOTICE));
+        assertEquals(0, scheduler.getAverageQueueMillis(MODERATION), 0.001);
+        assertEquals(0, scheduler.getMaxQueueMillis(MODERATION));
+        assertEquals(0, scheduler.getAverageQueueMillis(APPROVAL), 0.001);
+        assertEquals(3, scheduler.getSubmittedCount(MODERATION) + scheduler.getSubmittedCount(NOTICE));
+    }
+
+    private Supplier<CompletableFuture<String>> call(String name) {
+        return () -> {
+            started.add(name);
+            CompletableFuture<String> call = new CompletableFuture<>();
+            calls.put(name, call);
+            return call;
+        };
+    }
+
+    private void complete(String name) {
+        CompletableFuture<String> call = calls.remove(name);
+        assertTrue(name + " never started", call != null);
+        call.complete(name + " done");
+    }
+
+    private int runningOn(String prefix) {
+        return (int) calls.keySet().stream().filter(name -> name.startsWith(prefix)).count();
+    }
+}
@@ -0,0 +1,134 @@
+package com.miclesworkshop.halalbot;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SlowmodeLimiterTest {
+    private static final int THRESHOLD = 8;
+    private static final int WINDOW_SECONDS = 60;
+    // the window is split into 12 buckets
+    private static final int BUCKET_SECONDS = WINDOW_SECONDS / 12;
+
+    // nanoTime can start anywhere, including below zero
+    private final AtomicLong nanos = new AtomicLong(-TimeUnit.DAYS.toNanos(3));
+
+    @Test
+    public void escalatesAtTheThreshold() {
+        SlowmodeLimiter limiter = limiter(THRESHOLD);
+
+        assertNoChange(limiter, THRESHOLD - 1);
+        assertEquals(4, limiter.record());
+        assertEquals(4, limiter.getSlowmodeSeconds());
+        assertTrue(limiter.isCoolingDown());
+    }
+
+    @Test
+    public void thresholdHalvesOnEachStepUntilTheMaximum() {
+        SlowmodeLimiter limiter = limiter(THRESHOLD);
+
+        assertNoChange(limiter, THRESHOLD - 1);
+        assertEquals(4, limiter.record());
+
+        int expectedSeconds = 8;
+        for (int needed = THRESHOLD / 2; expectedSeconds <= 64; needed = Math.max(1, needed / 2)) {
+            // messages of the bucket that escalated don't count again
+            advanceSeconds(BUCKET_SECONDS);
+            assertNoChange(limiter, needed - 1);
+            assertEquals(expectedSeconds, limiter.record());
+            expectedSeconds *= 2;
+        }
+
+        // 64 s is past the maximum, so there are no further steps however busy the channel gets
+        advanceSeconds(BUCKET_SECONDS);
+        assertNoChange(limiter, 1000);
+        assertEquals(64, limiter.getSlowmodeSeconds());
+    }
+
+    @Test
+    public void firstMessageAfterTheCooldownEndsIt() {
+        SlowmodeLimiter limiter = limiter(THRESHOLD);
+
+        assertNoChange(limiter, THRESHOLD - 1);
+        assertEquals(4, limiter.record());
+
+        advanceSeconds(59);
+        assertNoChange(limiter, 1);
+        assertTrue(limiter.isCoolingDown());
+
+        // one escalation with a one minute cooldown, counted from the escalation
+        advanceSeconds(1);
+        assertEquals(0, limiter.record());
+        assertFalse(limiter.isCoolingDown());
+        assertEquals(0, limiter.getSlowmodeSeconds());
+
+        // and it starts over at the full threshold
+        advanceSeconds(BUCKET_SECONDS);
+        assertNoChange(limiter, THRESHOLD - 1);
+        assertEquals(4, limiter.record());
+    }
+
+    @Test
+    public void eachEscalationExtendsTheCooldown() {
+        SlowmodeLimiter limiter = limiter(THRESHOLD);
+
+        assertNoChange(limiter, THRESHOLD - 1);
+        assertEquals(4, limiter.record());
+        advanceSeconds(BUCKET_SECONDS);
+        assertNoChange(limiter, THRESHOLD / 2 - 1);
+        assertEquals(8, limiter.record());
+
+        advanceSeconds(120 - BUCKET_SECONDS - 1);
+        assertNoChange(limiter, 1);
+
+        advanceSeconds(1);
+        assertEquals(0, limiter.record());
+    }
+
+    @Test
+    public void oldBucketsSlideOutOfTheWindow() {
+        SlowmodeLimiter limiter = limiter(THRESHOLD);
+
+        assertNoChange(limiter, THRESHOLD - 1);
+
+        // the first bucket is still the oldest one in the window
+        advanceSeconds(WINDOW_SECONDS - BUCKET_SECONDS);
+        assertEquals(4, limiter.record());
+
+        SlowmodeLimiter slid = limiter(THRESHOLD);
+
+        assertNoChange(slid, THRESHOLD - 1);
+
+        // now it has left the window
+        advanceSeconds(WINDOW_SECONDS);
+        assertNoChange(slid, THRESHOLD - 1);
+        assertEquals(4, slid.record());
+    }
+
+    @Test
+    public void zeroThresholdDisablesIt() {
+        SlowmodeLimiter limiter = limiter(0);
+
+        assertNoChange(limiter, 10_000);
+        assertFalse(limiter.isCoolingDown());
+    }
+
+    private SlowmodeLimiter limiter(int threshold) {
+        return new SlowmodeLimiter(threshold, WINDOW_SECONDS, 1, nanos::get);
+    }
+
+    private void advanceSeconds(long seconds) {
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    private static void assertNoChange(SlowmodeLimiter limiter, int messages) {
+        for (int i = 0; i < messages; i++) {
+            assertEquals(SlowmodeLimiter.NO_CHANGE, limiter.record());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.miclesworkshop.halalbot.quran;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertTrue;
+
+public class QuranCorpusConverterTest {
+    private static final File SERIALIZED = new File("src/main/resources/halalbot_quran_data.bin");
+    private static final File CORPUS = new File("src/main/resources/halalbot_quran.idx");
+
+    /**
+     * The corpus is generated, but checked in so the bot doesn't convert it on every build. This keeps it from
+     * going stale when the converter or the serialized data changes; run {@code gradle convertQuranCorpus} to
+     * bring it up to date.
+     */
+    @Test
+    public void checkedInCorpusMatchesTheConverterOutput() throws IOException, ClassNotFoundException {
+        String[][][] data;
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(SERIALIZED))) {
+            data = (String[][][]) in.readObject();
+        }
+
+        assertTrue(CORPUS + " is out of date, run gradle convertQuranCorpus",
+                Arrays.equals(QuranCorpusConverter.convert(data), Files.readAllBytes(CORPUS.toPath())));
+    }
+}
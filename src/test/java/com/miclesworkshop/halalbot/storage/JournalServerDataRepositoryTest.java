@@ -0,0 +1,177 @@
+package com.miclesworkshop.halalbot.storage;
+
+import com.miclesworkshop.halalbot.ServerData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JournalServerDataRepositoryTest {
+    private static final int WRITERS = 8;
+    private static final int CHANGES_PER_WRITER = 500;
+    private static final int SHARED_SERVERS = 10;
+
+    private File folder;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService threads;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("halalbot-journal").toFile();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        threads = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        threads.shutdownNow();
+        scheduler.shutdownNow();
+
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        folder.delete();
+    }
+
+    @Test
+    public void concurrentChangesSurviveSnapshotsCompactionAndReplay() throws Exception {
+        JournalServerDataRepository repository = open();
+
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Future<?>> writers = new ArrayList<>();
+        List<Future<?>> readers = new ArrayList<>();
+
+        for (int writer = 0; writer < WRITERS; writer++) {
+            int id = writer;
+            writers.add(threads.submit(() -> {
+                start.await();
+                for (int i = 0; i < CHANGES_PER_WRITER; i++) {
+                    long server = i % SHARED_SERVERS;
+                    repository.apply(server, ServerDataChange.roleAdded(roleKey(id, i), i));
+                    if (i % 2 == 0) {
+                        repository.apply(server, ServerDataChange.roleRemoved(roleKey(id, i)));
+                    }
+
+                    // one server per writer, whose final value depends on the order of its changes
+                    repository.apply(ownServer(id), ServerDataChange.slowmodeThreshold(i));
+                }
+                return null;
+            }));
+        }
+
+        for (int reader = 0; reader < 2; reader++) {
+            readers.add(threads.submit(() -> {
+                start.await();
+                while (writing.get()) {
+                    for (Map.Entry<Long, ServerData> entry : repository.snapshot().entrySet()) {
+                        // iterating a copy must never race with the writers
+                        for (Map.Entry<String, Long> role : entry.getValue().getRoles().entrySet()) {
+                            assertTrue(role.getKey().startsWith("w"));
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+
+        readers.add(threads.submit(() -> {
+            start.await();
+            while (writing.get()) {
+                repository.compact();
+            }
+            return null;
+        }));
+
+        start.countDown();
+
+        for (Future<?> writer : writers) {
+            writer.get(1, TimeUnit.MINUTES);
+        }
+        writing.set(false);
+        for (Future<?> reader : readers) {
+            reader.get(1, TimeUnit.MINUTES);
+        }
+
+        assertTrue(repository.getCompactions() > 0);
+
+        Map<Long, Map<String, Long>> expected = expectedRoles();
+        assertRoles(expected, repository);
+
+        repository.close();
+
+        JournalServerDataRepository replayed = open();
+        assertRoles(expected, replayed);
+
+        for (int writer = 0; writer < WRITERS; writer++) {
+            assertEquals(CHANGES_PER_WRITER - 1, replayed.get(ownServer(writer)).getSlowmodeThreshold());
+        }
+    }
+
+    @Test
+    public void unflushedChangesAreReplayedFromTheJournal() {
+        JournalServerDataRepository repository = open();
+
+        for (int i = 0; i < 100; i++) {
+            repository.apply(1, ServerDataChange.roleAdded("role" + i, i));
+        }
+        repository.flush();
+
+        // no close, as after a crash: the journal has to be replayed onto the snapshot, if there is one
+        JournalServerDataRepository replayed = open();
+        assertEquals(100, replayed.get(1).getRoles().size());
+        assertEquals(100, replayed.getJournalEntries());
+    }
+
+    private JournalServerDataRepository open() {
+        return new JournalServerDataRepository(new File(folder, "server_data.json"),
+                new File(folder, "server_data.journal"), scheduler, 1, TimeUnit.MILLISECONDS);
+    }
+
+    private static Map<Long, Map<String, Long>> expectedRoles() {
+        Map<Long, Map<String, Long>> expected = new HashMap<>();
+
+        for (int writer = 0; writer < WRITERS; writer++) {
+            for (int i = 1; i < CHANGES_PER_WRITER; i += 2) {
+                expected.computeIfAbsent((long) (i % SHARED_SERVERS), id -> new HashMap<>())
+                        .put(roleKey(writer, i), (long) i);
+            }
+        }
+
+        return expected;
+    }
+
+    private static void assertRoles(Map<Long, Map<String, Long>> expected, JournalServerDataRepository repository) {
+        for (long server = 0; server < SHARED_SERVERS; server++) {
+            assertEquals(expected.getOrDefault(server, new HashMap<>()), repository.get(server).getRoles());
+        }
+    }
+
+    private static String roleKey(int writer, int i) {
+        return "w" + writer + "-" + i;
+    }
+
+    private static long ownServer(int writer) {
+        return 100 + writer;
+    }
+}